@@ -0,0 +1,70 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.impl.cache.CacheImpl;
+import io.fabric8.kubernetes.client.server.mock.KubernetesCrudDispatcher;
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
+import io.fabric8.mockwebserver.Context;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.api.model.v1alpha1.FooSpec;
+import okhttp3.mockwebserver.MockWebServer;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Helpers shared by the benchmarks.
+ */
+final class BenchmarkFixtures {
+    static final String NAMESPACE = "ns1";
+
+    private BenchmarkFixtures() { }
+
+    /**
+     * @return a started mock server in CRUD mode, same as {@code @EnableKubernetesMockClient(crud = true)}
+     */
+    static KubernetesMockServer newCrudMockServer() {
+        KubernetesMockServer server = new KubernetesMockServer(new Context(), new MockWebServer(), new HashMap<>(), new KubernetesCrudDispatcher(), false);
+        server.init();
+        return server;
+    }
+
+    static Foo newFoo(String name, int replicas) {
+        Foo foo = new Foo();
+        FooSpec fooSpec = new FooSpec();
+        fooSpec.setReplicas(replicas);
+        fooSpec.setDeploymentName(name + "-deploy");
+        foo.setSpec(fooSpec);
+        foo.setMetadata(new ObjectMetaBuilder().withName(name).withNamespace(NAMESPACE)
+                .withUid("uid-" + name).withResourceVersion("1").build());
+        return foo;
+    }
+
+    /**
+     * Puts objects straight into an informer's cache, without starting the informer.
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends io.fabric8.kubernetes.api.model.HasMetadata> void putIntoCache(SharedIndexInformer<T> informer, T object) {
+        ((CacheImpl<T>) informer.getIndexer()).put(object);
+    }
+
+    static Deployment newOwnedDeployment(SampleController controller, Foo foo) {
+        Deployment deployment = controller.createNewDeployment(foo);
+        deployment.getMetadata().setResourceVersion("1");
+        return deployment;
+    }
+
+    static void awaitCondition(BooleanSupplier condition, long timeoutMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Condition not met within " + timeoutMillis + "ms");
+            }
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+    }
+}
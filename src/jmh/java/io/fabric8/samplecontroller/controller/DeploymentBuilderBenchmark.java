@@ -0,0 +1,62 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientBuilder;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction of the desired Deployment, which happens on every reconcile.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeploymentBuilderBenchmark {
+    private KubernetesClient client;
+    private SampleController controller;
+    private Foo foo;
+
+    @Setup
+    public void setUp() {
+        // Nothing is ever sent to this URL
+        client = new KubernetesClientBuilder().withConfig(new ConfigBuilder().withMasterUrl("https://localhost:1").build()).build();
+        controller = new SampleController(client, client.informers().sharedIndexInformerFor(Deployment.class, 0),
+                client.informers().sharedIndexInformerFor(Foo.class, 0),
+                BenchmarkFixtures.NAMESPACE);
+        foo = BenchmarkFixtures.newFoo("example-foo", 3);
+    }
+
+    @TearDown
+    public void tearDown() {
+        controller.stop();
+        client.close();
+    }
+
+    @Benchmark
+    public Deployment createNewDeployment() {
+        return controller.createNewDeployment(foo);
+    }
+
+    @Benchmark
+    public Map<String, String> getDeploymentLabels() {
+        return controller.getDeploymentLabels(foo);
+    }
+}
@@ -0,0 +1,111 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientBuilder;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.cache.Cache;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.workqueue.RateLimitingWorkQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Informer event path: key extraction, enqueueFoo and handleObject owner resolution.
+ * Informers are never started, the caches are filled directly so no request is ever sent.
+ * Run with {@code -prof gc}, gc.alloc.rate.norm is the allocation per event, including the
+ * work queue insert.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventPathBenchmark {
+    @Param({"1", "1000"})
+    private int foos;
+
+    private KubernetesClient client;
+    private SampleController controller;
+    private RateLimitingWorkQueue<String> workqueue;
+    private Foo[] fooArray;
+    private Deployment[] deployments;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        // Nothing is ever sent to this URL
+        client = new KubernetesClientBuilder().withConfig(new ConfigBuilder().withMasterUrl("https://localhost:1").build()).build();
+        SharedIndexInformer<Deployment> deploymentInformer = client.informers().sharedIndexInformerFor(Deployment.class, 0);
+        SharedIndexInformer<Foo> fooInformer = client.informers().sharedIndexInformerFor(Foo.class, 0);
+        controller = new SampleController(client, deploymentInformer, fooInformer, BenchmarkFixtures.NAMESPACE);
+        workqueue = controller.getWorkQueue();
+        fooArray = new Foo[foos];
+        deployments = new Deployment[foos];
+        for (int i = 0; i < foos; i++) {
+            fooArray[i] = BenchmarkFixtures.newFoo("foo-" + i, 1);
+            deployments[i] = BenchmarkFixtures.newOwnedDeployment(controller, fooArray[i]);
+            BenchmarkFixtures.putIntoCache(fooInformer, fooArray[i]);
+            BenchmarkFixtures.putIntoCache(deploymentInformer, deployments[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        controller.stop();
+        client.close();
+    }
+
+    @Benchmark
+    public String metaNamespaceKey() {
+        return Cache.metaNamespaceKeyFunc(fooArray[next()]);
+    }
+
+    /**
+     * Enqueues a Foo and takes it off the queue again, so that every invocation goes
+     * through the actual insert rather than the deduplication shortcut.
+     */
+    @Benchmark
+    public String enqueueFoo() throws InterruptedException {
+        controller.enqueueFoo(fooArray[next()]);
+        return drain();
+    }
+
+    @Benchmark
+    public String handleObject() throws InterruptedException {
+        controller.handleObject(deployments[next()]);
+        return drain();
+    }
+
+    @Benchmark
+    public OwnerReference getControllerOf() {
+        return SampleController.getControllerOf(deployments[next()]);
+    }
+
+    private int next() {
+        int current = index;
+        index = current + 1 == foos ? 0 : current + 1;
+        return current;
+    }
+
+    private String drain() throws InterruptedException {
+        String key = workqueue.get();
+        workqueue.done(key);
+        return key;
+    }
+}
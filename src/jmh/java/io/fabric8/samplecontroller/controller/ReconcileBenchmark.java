@@ -0,0 +1,124 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.MixedOperation;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics.ReconcileOutcome;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full reconcile loop: informers, work queue, workers and API writes against a local
+ * {@link KubernetesMockServer} in CRUD mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReconcileBenchmark {
+    private static final long CONVERGENCE_TIMEOUT_MILLIS = 30_000;
+
+    private KubernetesMockServer server;
+    private KubernetesClient client;
+    private MixedOperation<Foo, KubernetesResourceList<Foo>, Resource<Foo>> fooClient;
+    private SharedIndexInformer<Foo> fooInformer;
+    private SampleController controller;
+    private Thread controllerThread;
+    private int fooCount;
+    private int replicas = 1;
+
+    @Setup
+    public void setUp() throws ExecutionException, InterruptedException {
+        server = BenchmarkFixtures.newCrudMockServer();
+        client = server.createClient();
+        fooClient = client.resources(Foo.class);
+        SharedInformerFactory informerFactory = client.informers();
+        SharedIndexInformer<Deployment> deploymentInformer = informerFactory.sharedIndexInformerFor(Deployment.class, 0);
+        fooInformer = informerFactory.sharedIndexInformerFor(Foo.class, 0);
+        controller = new SampleController(client, deploymentInformer, fooInformer, BenchmarkFixtures.NAMESPACE);
+        informerFactory.startAllRegisteredInformers().get();
+        controllerThread = new Thread(() -> controller.run(2, false), "benchmark-controller");
+        controllerThread.start();
+        createAndAwait("steady-foo", replicas);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        controller.stop();
+        controllerThread.join();
+        client.informers().stopAllRegisteredInformers();
+        client.close();
+        server.destroy();
+    }
+
+    /**
+     * Creates a new Foo and waits until the controller has created its Deployment
+     * and written the Foo status.
+     */
+    @Benchmark
+    public Foo createAndConverge() {
+        return createAndAwait("foo-" + fooCount++, 1);
+    }
+
+    /**
+     * Changes the replicas of an existing Foo and waits until the change shows up in its status.
+     */
+    @Benchmark
+    public Foo scaleAndConverge() {
+        replicas = replicas == 1 ? 2 : 1;
+        int desiredReplicas = replicas;
+        fooClient.inNamespace(BenchmarkFixtures.NAMESPACE).withName("steady-foo")
+                .edit(foo -> {
+                    foo.getSpec().setReplicas(desiredReplicas);
+                    return foo;
+                });
+        return awaitAvailableReplicas("steady-foo", desiredReplicas);
+    }
+
+    /**
+     * Reconciles a converged Foo straight from the cache, this shouldn't send any request.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public ReconcileOutcome reconcileSteadyState() {
+        return controller.reconcile(fooInformer.getIndexer().getByKey(BenchmarkFixtures.NAMESPACE + "/steady-foo"));
+    }
+
+    private Foo createAndAwait(String name, int fooReplicas) {
+        Foo foo = BenchmarkFixtures.newFoo(name, fooReplicas);
+        foo.getMetadata().setUid(null);
+        foo.getMetadata().setResourceVersion(null);
+        fooClient.inNamespace(BenchmarkFixtures.NAMESPACE).resource(foo).create();
+        return awaitAvailableReplicas(name, fooReplicas);
+    }
+
+    private Foo awaitAvailableReplicas(String name, int availableReplicas) {
+        String key = BenchmarkFixtures.NAMESPACE + "/" + name;
+        BenchmarkFixtures.awaitCondition(() -> {
+            Foo cached = fooInformer.getIndexer().getByKey(key);
+            return cached != null && cached.getStatus() != null && cached.getStatus().getAvailableReplicas() == availableReplicas;
+        }, CONVERGENCE_TIMEOUT_MILLIS);
+        return fooInformer.getIndexer().getByKey(key);
+    }
+}
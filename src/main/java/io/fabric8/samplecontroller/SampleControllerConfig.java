@@ -0,0 +1,410 @@
+package io.fabric8.samplecontroller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Tunables for {@link SampleControllerMain}. Every option can be set either via an
+ * environment variable or a system property of the same name, e.g. WORKER_THREADS=4 or
+ * -DWORKER_THREADS=4. Environment variables take precedence.
+ */
+public class SampleControllerConfig {
+    public static final String ALL_NAMESPACES = "*";
+
+    private int workerThreads = 2;
+    private boolean virtualThreads;
+    private int metricsPort;
+    private boolean pruneInformerCache;
+    private boolean deploymentLabelSelector;
+    private boolean asyncReconcile;
+    private int maxInFlightRequests = 256;
+    private int batchReconcileSize;
+    private double writeQps;
+    private double writeMinQps = 1;
+    private int writeBurst = 100;
+    private List<String> watchNamespaces = Collections.emptyList();
+    private boolean sharding;
+    private String shardGroup = "samplecontroller";
+    private String replicaIdentity;
+    private int shardLeaseDurationSeconds = 15;
+    private boolean leaderElection;
+    private String leaderElectionLeaseName = "samplecontroller-leader";
+    private int leaderElectionLeaseDurationSeconds = 15;
+    private String cacheSnapshotDir;
+    private int cacheSnapshotIntervalSeconds = 60;
+    private int cacheSnapshotMaxAgeSeconds = 600;
+    private int resyncPeriodSeconds = 600;
+    private double resyncJitter = 0.5;
+    private int logQueueCapacity;
+    private String eventTraceFile;
+
+    public static SampleControllerConfig fromEnvironment() {
+        SampleControllerConfig config = new SampleControllerConfig();
+        config.setWorkerThreads(getInt("WORKER_THREADS", config.getWorkerThreads()));
+        config.setVirtualThreads(getBoolean("VIRTUAL_THREADS", config.isVirtualThreads()));
+        config.setMetricsPort(getInt("METRICS_PORT", config.getMetricsPort()));
+        config.setPruneInformerCache(getBoolean("PRUNE_INFORMER_CACHE", config.isPruneInformerCache()));
+        config.setDeploymentLabelSelector(getBoolean("DEPLOYMENT_LABEL_SELECTOR", config.isDeploymentLabelSelector()));
+        config.setAsyncReconcile(getBoolean("ASYNC_RECONCILE", config.isAsyncReconcile()));
+        config.setMaxInFlightRequests(getInt("MAX_IN_FLIGHT_REQUESTS", config.getMaxInFlightRequests()));
+        config.setBatchReconcileSize(getInt("BATCH_RECONCILE_SIZE", config.getBatchReconcileSize()));
+        config.setWriteQps(getDouble("WRITE_QPS", config.getWriteQps()));
+        config.setWriteMinQps(getDouble("WRITE_MIN_QPS", config.getWriteMinQps()));
+        config.setWriteBurst(getInt("WRITE_BURST", config.getWriteBurst()));
+        config.setWatchNamespaces(getList("WATCH_NAMESPACES", config.getWatchNamespaces()));
+        config.setSharding(getBoolean("SHARDING", config.isSharding()));
+        config.setShardGroup(getString("SHARD_GROUP", config.getShardGroup()));
+        config.setReplicaIdentity(getString("REPLICA_IDENTITY", getString("HOSTNAME", UUID.randomUUID().toString())));
+        config.setShardLeaseDurationSeconds(getInt("SHARD_LEASE_DURATION_SECONDS", config.getShardLeaseDurationSeconds()));
+        config.setLeaderElection(getBoolean("LEADER_ELECTION", config.isLeaderElection()));
+        config.setLeaderElectionLeaseName(getString("LEADER_ELECTION_LEASE_NAME", config.getLeaderElectionLeaseName()));
+        config.setLeaderElectionLeaseDurationSeconds(getInt("LEADER_ELECTION_LEASE_DURATION_SECONDS", config.getLeaderElectionLeaseDurationSeconds()));
+        config.setCacheSnapshotDir(getString("CACHE_SNAPSHOT_DIR", config.getCacheSnapshotDir()));
+        config.setCacheSnapshotIntervalSeconds(getInt("CACHE_SNAPSHOT_INTERVAL_SECONDS", config.getCacheSnapshotIntervalSeconds()));
+        config.setCacheSnapshotMaxAgeSeconds(getInt("CACHE_SNAPSHOT_MAX_AGE_SECONDS", config.getCacheSnapshotMaxAgeSeconds()));
+        config.setResyncPeriodSeconds(getInt("RESYNC_PERIOD_SECONDS", config.getResyncPeriodSeconds()));
+        config.setResyncJitter(getDouble("RESYNC_JITTER", config.getResyncJitter()));
+        config.setLogQueueCapacity(getInt("LOG_QUEUE_CAPACITY", config.getLogQueueCapacity()));
+        config.setEventTraceFile(getString("EVENT_TRACE_FILE", config.getEventTraceFile()));
+        return config;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @return port to serve Prometheus metrics on, 0, the default, disables the metrics endpoint
+     */
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+
+    /**
+     * @return whether informer caches only keep the fields the controller reads
+     */
+    public boolean isPruneInformerCache() {
+        return pruneInformerCache;
+    }
+
+    public void setPruneInformerCache(boolean pruneInformerCache) {
+        this.pruneInformerCache = pruneInformerCache;
+    }
+
+    /**
+     * @return whether to only watch Deployments carrying the controller label
+     */
+    public boolean isDeploymentLabelSelector() {
+        return deploymentLabelSelector;
+    }
+
+    public void setDeploymentLabelSelector(boolean deploymentLabelSelector) {
+        this.deploymentLabelSelector = deploymentLabelSelector;
+    }
+
+    /**
+     * @return whether workers hand reconciles off to the asynchronous API client instead of
+     * waiting for every request
+     */
+    public boolean isAsyncReconcile() {
+        return asyncReconcile;
+    }
+
+    public void setAsyncReconcile(boolean asyncReconcile) {
+        this.asyncReconcile = asyncReconcile;
+    }
+
+    /**
+     * @return upper bound of API requests in flight when asyncReconcile is enabled
+     */
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public void setMaxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+    /**
+     * @return number of keys a worker reconciles together, 0 reconciles one key at a time
+     */
+    public int getBatchReconcileSize() {
+        return batchReconcileSize;
+    }
+
+    public void setBatchReconcileSize(int batchReconcileSize) {
+        this.batchReconcileSize = batchReconcileSize;
+    }
+
+    /**
+     * @return upper bound of writes per second sent to the API server, 0, the default, disables write throttling
+     */
+    public double getWriteQps() {
+        return writeQps;
+    }
+
+    public void setWriteQps(double writeQps) {
+        this.writeQps = writeQps;
+    }
+
+    /**
+     * @return rate the write throttle never goes below, however often the API server pushes back
+     */
+    public double getWriteMinQps() {
+        return writeMinQps;
+    }
+
+    public void setWriteMinQps(double writeMinQps) {
+        this.writeMinQps = writeMinQps;
+    }
+
+    public int getWriteBurst() {
+        return writeBurst;
+    }
+
+    public void setWriteBurst(int writeBurst) {
+        this.writeBurst = writeBurst;
+    }
+
+    /**
+     * @return namespaces to watch, empty for the namespace of the client, {@link #ALL_NAMESPACES} for all of them
+     */
+    public List<String> getWatchNamespaces() {
+        return watchNamespaces;
+    }
+
+    public void setWatchNamespaces(List<String> watchNamespaces) {
+        this.watchNamespaces = watchNamespaces;
+    }
+
+    /**
+     * @return whether Foo keys are split across all replicas of the shard group
+     */
+    public boolean isSharding() {
+        return sharding;
+    }
+
+    public void setSharding(boolean sharding) {
+        this.sharding = sharding;
+    }
+
+    public String getShardGroup() {
+        return shardGroup;
+    }
+
+    public void setShardGroup(String shardGroup) {
+        this.shardGroup = shardGroup;
+    }
+
+    /**
+     * @return unique name of this replica, for sharding and leader election, defaults to the host name
+     */
+    public String getReplicaIdentity() {
+        return replicaIdentity;
+    }
+
+    public void setReplicaIdentity(String replicaIdentity) {
+        this.replicaIdentity = replicaIdentity;
+    }
+
+    public int getShardLeaseDurationSeconds() {
+        return shardLeaseDurationSeconds;
+    }
+
+    public void setShardLeaseDurationSeconds(int shardLeaseDurationSeconds) {
+        this.shardLeaseDurationSeconds = shardLeaseDurationSeconds;
+    }
+
+    /**
+     * @return whether only the replica holding the leader election Lease reconciles, the others
+     * keep their caches warm
+     */
+    public boolean isLeaderElection() {
+        return leaderElection;
+    }
+
+    public void setLeaderElection(boolean leaderElection) {
+        this.leaderElection = leaderElection;
+    }
+
+    public String getLeaderElectionLeaseName() {
+        return leaderElectionLeaseName;
+    }
+
+    public void setLeaderElectionLeaseName(String leaderElectionLeaseName) {
+        this.leaderElectionLeaseName = leaderElectionLeaseName;
+    }
+
+    public int getLeaderElectionLeaseDurationSeconds() {
+        return leaderElectionLeaseDurationSeconds;
+    }
+
+    public void setLeaderElectionLeaseDurationSeconds(int leaderElectionLeaseDurationSeconds) {
+        this.leaderElectionLeaseDurationSeconds = leaderElectionLeaseDurationSeconds;
+    }
+
+    /**
+     * @return directory to keep snapshots of the informer caches in, null disables snapshots
+     */
+    public String getCacheSnapshotDir() {
+        return cacheSnapshotDir;
+    }
+
+    public void setCacheSnapshotDir(String cacheSnapshotDir) {
+        this.cacheSnapshotDir = cacheSnapshotDir;
+    }
+
+    public int getCacheSnapshotIntervalSeconds() {
+        return cacheSnapshotIntervalSeconds;
+    }
+
+    public void setCacheSnapshotIntervalSeconds(int cacheSnapshotIntervalSeconds) {
+        this.cacheSnapshotIntervalSeconds = cacheSnapshotIntervalSeconds;
+    }
+
+    /**
+     * @return age after which a snapshot is no longer restored on start
+     */
+    public int getCacheSnapshotMaxAgeSeconds() {
+        return cacheSnapshotMaxAgeSeconds;
+    }
+
+    public void setCacheSnapshotMaxAgeSeconds(int cacheSnapshotMaxAgeSeconds) {
+        this.cacheSnapshotMaxAgeSeconds = cacheSnapshotMaxAgeSeconds;
+    }
+
+    /**
+     * @return minimum time between two resyncs of a Foo, 0 disables resyncs
+     */
+    public int getResyncPeriodSeconds() {
+        return resyncPeriodSeconds;
+    }
+
+    public void setResyncPeriodSeconds(int resyncPeriodSeconds) {
+        this.resyncPeriodSeconds = resyncPeriodSeconds;
+    }
+
+    /**
+     * @return fraction of the resync period every resync is randomly delayed by at most
+     */
+    public double getResyncJitter() {
+        return resyncJitter;
+    }
+
+    public void setResyncJitter(double resyncJitter) {
+        this.resyncJitter = resyncJitter;
+    }
+
+    /**
+     * @return log lines which may wait for the console before further lines are dropped, 0,
+     * the default, writes every line synchronously
+     */
+    public int getLogQueueCapacity() {
+        return logQueueCapacity;
+    }
+
+    public void setLogQueueCapacity(int logQueueCapacity) {
+        this.logQueueCapacity = logQueueCapacity;
+    }
+
+    /**
+     * @return file to record all informer events to, null disables recording
+     */
+    public String getEventTraceFile() {
+        return eventTraceFile;
+    }
+
+    public void setEventTraceFile(String eventTraceFile) {
+        this.eventTraceFile = eventTraceFile;
+    }
+
+    @Override
+    public String toString() {
+        return "SampleControllerConfig{workerThreads=" + workerThreads + ",virtualThreads=" + virtualThreads +
+                ",metricsPort=" + metricsPort + ",pruneInformerCache=" + pruneInformerCache +
+                ",deploymentLabelSelector=" + deploymentLabelSelector + ",asyncReconcile=" + asyncReconcile +
+                ",maxInFlightRequests=" + maxInFlightRequests + ",batchReconcileSize=" + batchReconcileSize + ",writeQps=" + writeQps + ",writeMinQps=" + writeMinQps +
+                ",writeBurst=" + writeBurst + ",watchNamespaces=" + watchNamespaces + ",sharding=" + sharding +
+                ",shardGroup=" + shardGroup + ",replicaIdentity=" + replicaIdentity +
+                ",shardLeaseDurationSeconds=" + shardLeaseDurationSeconds + ",leaderElection=" + leaderElection +
+                ",leaderElectionLeaseName=" + leaderElectionLeaseName +
+                ",leaderElectionLeaseDurationSeconds=" + leaderElectionLeaseDurationSeconds +
+                ",cacheSnapshotDir=" + cacheSnapshotDir + ",cacheSnapshotIntervalSeconds=" + cacheSnapshotIntervalSeconds +
+                ",cacheSnapshotMaxAgeSeconds=" + cacheSnapshotMaxAgeSeconds + ",resyncPeriodSeconds=" + resyncPeriodSeconds +
+                ",resyncJitter=" + resyncJitter + ",logQueueCapacity=" + logQueueCapacity + ",eventTraceFile=" + eventTraceFile + "}";
+    }
+
+    private static String get(String name) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            value = System.getProperty(name);
+        }
+        return value == null || value.isEmpty() ? null : value.trim();
+    }
+
+    private static String getString(String name, String defaultValue) {
+        String value = get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static List<String> getList(String name, List<String> defaultValue) {
+        String value = get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        List<String> values = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                values.add(item.trim());
+            }
+        }
+        return values;
+    }
+
+    private static int getInt(String name, int defaultValue) {
+        String value = get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException numberFormatException) {
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value, numberFormatException);
+        }
+    }
+
+    private static double getDouble(String name, double defaultValue) {
+        String value = get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException numberFormatException) {
+            throw new IllegalArgumentException("Invalid value for " + name + ": " + value, numberFormatException);
+        }
+    }
+
+    private static boolean getBoolean(String name, boolean defaultValue) {
+        String value = get(name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -2,31 +2,81 @@ package io.fabric8.samplecontroller;
 
 import io.fabric8.kubernetes.api.model.KubernetesResourceList;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentList;
 import io.fabric8.kubernetes.client.KubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClientBuilder;
 import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.FilterWatchListDeletable;
 import io.fabric8.kubernetes.client.dsl.MixedOperation;
 import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.dsl.RollableScalableResource;
 import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
-import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import io.fabric8.samplecontroller.cache.CacheTransforms;
+import io.fabric8.samplecontroller.cache.InformerSnapshots;
+import io.fabric8.samplecontroller.cache.TransformingItemStore;
 import io.fabric8.samplecontroller.controller.SampleController;
+import io.fabric8.samplecontroller.election.HotStandbyElection;
+import io.fabric8.samplecontroller.logging.AsyncLogOutput;
 import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.metrics.ApiRequestMetricsInterceptor;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics;
+import io.fabric8.samplecontroller.metrics.MetricsServer;
+import io.fabric8.samplecontroller.shard.ShardMembership;
+import io.fabric8.samplecontroller.throttle.AdaptiveRateLimiter;
+import io.fabric8.samplecontroller.throttle.WriteThrottleInterceptor;
+import io.fabric8.samplecontroller.trace.EventRecorder;
+import io.fabric8.samplecontroller.trace.TraceEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Main Class for application, you can run this sample using this command:
  *
  *  mvn exec:java -Dexec.mainClass="io.fabric8.samplecontroller.SampleControllerMain"
+ *
+ * See {@link SampleControllerConfig} for the supported environment variables.
  */
 public class SampleControllerMain {
     public static final Logger logger = LoggerFactory.getLogger(SampleControllerMain.class.getSimpleName());
+    /**
+     * Events which may wait for the trace writer before events are dropped
+     */
+    private static final int EVENT_TRACE_CAPACITY = 65536;
+    /**
+     * Time a SIGTERM waits for the controller to stop and clean up, below the default
+     * termination grace period of a pod
+     */
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(20);
 
     public static void main(String[] args) {
-        try (KubernetesClient client = new KubernetesClientBuilder().build()) {
+        SampleControllerConfig config = SampleControllerConfig.fromEnvironment();
+        if (config.getLogQueueCapacity() > 0) {
+            // Informer and worker threads must never wait for the console. The hook writes
+            // the remaining lines on shutdown, including a SIGTERM.
+            AsyncLogOutput asyncLogOutput = AsyncLogOutput.installOnStandardError(config.getLogQueueCapacity());
+            Runtime.getRuntime().addShutdownHook(new Thread(asyncLogOutput::close, "async-log-flush"));
+        }
+        logger.info("Using {}", config);
+        ControllerMetrics metrics = new ControllerMetrics();
+        AdaptiveRateLimiter writeRateLimiter = config.getWriteQps() > 0 ? newWriteRateLimiter(config, metrics) : null;
+        try (KubernetesClient client = new KubernetesClientBuilder()
+                .withHttpClientBuilderConsumer(builder -> {
+                    builder.addOrReplaceInterceptor(ApiRequestMetricsInterceptor.NAME, new ApiRequestMetricsInterceptor(metrics));
+                    if (writeRateLimiter != null) {
+                        builder.addOrReplaceInterceptor(WriteThrottleInterceptor.NAME, new WriteThrottleInterceptor(writeRateLimiter, metrics::writeThrottled));
+                    }
+                })
+                .build();
+             MetricsServer metricsServer = startMetricsServer(config, metrics)) {
             String namespace = client.getNamespace();
             if (namespace == null) {
                 logger.info("No namespace found via config, assuming default.");
@@ -35,26 +85,175 @@ public class SampleControllerMain {
 
             logger.info("Using namespace : {}", namespace);
 
-            SharedInformerFactory informerFactory = client.informers();
+            // A single namespace is watched directly, several namespaces share a watch on all
+            // namespaces and the controller skips the ones it doesn't handle
+            List<String> watchNamespaces = config.getWatchNamespaces();
+            String watchNamespace = null;
+            if (watchNamespaces.isEmpty()) {
+                watchNamespace = namespace;
+            } else if (watchNamespaces.size() == 1 && !watchNamespaces.contains(SampleControllerConfig.ALL_NAMESPACES)) {
+                watchNamespace = watchNamespaces.get(0);
+            }
+            logger.info("Watching {}", watchNamespace != null ? "namespace " + watchNamespace : "all namespaces");
 
             MixedOperation<Foo, KubernetesResourceList<Foo>, Resource<Foo>> fooClient = client.resources(Foo.class);
-            SharedIndexInformer<Deployment> deploymentSharedIndexInformer = informerFactory.sharedIndexInformerFor(Deployment.class, 10 * 60 * 1000);
-            SharedIndexInformer<Foo> fooSharedIndexInformer = informerFactory.sharedIndexInformerFor(Foo.class, 10 * 60 * 1000);
-            SampleController sampleController = new SampleController(client, fooClient, deploymentSharedIndexInformer, fooSharedIndexInformer, namespace);
+            FilterWatchListDeletable<Deployment, DeploymentList, RollableScalableResource<Deployment>> deployments = watchNamespace != null
+                    ? client.apps().deployments().inNamespace(watchNamespace) : client.apps().deployments().inAnyNamespace();
+            if (config.isDeploymentLabelSelector()) {
+                // Only Deployments created by this controller carry the label, everything else
+                // is filtered out by the API server and never reaches the cache
+                deployments = deployments.withLabel(SampleController.CONTROLLER_LABEL);
+            }
+            // The controller resyncs every Foo on its own schedule, informer resyncs would
+            // enqueue all of them at once
+            SharedIndexInformer<Deployment> deploymentSharedIndexInformer = deployments.runnableInformer(0);
+            SharedIndexInformer<Foo> fooSharedIndexInformer = (watchNamespace != null ? fooClient.inNamespace(watchNamespace) : fooClient.inAnyNamespace())
+                    .runnableInformer(0);
+            if (config.isPruneInformerCache()) {
+                deploymentSharedIndexInformer.itemStore(new TransformingItemStore<>(CacheTransforms::pruneDeployment));
+                fooSharedIndexInformer.itemStore(new TransformingItemStore<>(CacheTransforms::pruneFoo));
+            }
+            SampleController sampleController = new SampleController(client, deploymentSharedIndexInformer, fooSharedIndexInformer, watchNamespace, metrics);
+            if (watchNamespace == null && !watchNamespaces.contains(SampleControllerConfig.ALL_NAMESPACES)) {
+                sampleController.setNamespaces(watchNamespaces);
+            }
+            ShardMembership shardMembership = null;
+            if (config.isSharding()) {
+                shardMembership = new ShardMembership(client, namespace, config.getShardGroup(), config.getReplicaIdentity(),
+                        Duration.ofSeconds(config.getShardLeaseDurationSeconds()));
+                shardMembership.start();
+                sampleController.enableSharding(shardMembership);
+            }
+            if (writeRateLimiter != null) {
+                sampleController.enableWriteThrottle(writeRateLimiter);
+            }
+            if (config.isAsyncReconcile()) {
+                sampleController.enableAsyncReconcile(config.getMaxInFlightRequests());
+            }
+            if (config.getBatchReconcileSize() > 0) {
+                sampleController.enableBatchReconcile(config.getBatchReconcileSize());
+            }
+            if (config.getResyncPeriodSeconds() > 0) {
+                sampleController.enableResync(Duration.ofSeconds(config.getResyncPeriodSeconds()), config.getResyncJitter());
+            }
+            InformerSnapshots snapshots = null;
+            if (config.getCacheSnapshotDir() != null) {
+                snapshots = new InformerSnapshots(Paths.get(config.getCacheSnapshotDir()), Duration.ofSeconds(config.getCacheSnapshotMaxAgeSeconds()));
+                snapshots.restore("deployments", deploymentSharedIndexInformer, Deployment.class);
+                sampleController.setWarmStart(snapshots.restore("foos", fooSharedIndexInformer, Foo.class) > 0);
+            }
+            if (metricsServer != null) {
+                metricsServer.setReadinessCheck(sampleController::isReady);
+            }
+            EventRecorder eventRecorder = null;
+            if (config.getEventTraceFile() != null) {
+                // Registered before the informers start, so that the initial adds are part of the trace
+                eventRecorder = new EventRecorder(Paths.get(config.getEventTraceFile()), EVENT_TRACE_CAPACITY);
+                eventRecorder.recordFrom(fooSharedIndexInformer, TraceEvent.Resource.FOO);
+                eventRecorder.recordFrom(deploymentSharedIndexInformer, TraceEvent.Resource.DEPLOYMENT);
+                Runtime.getRuntime().addShutdownHook(new Thread(eventRecorder::close, "event-recorder-close"));
+                logger.info("Recording informer events to {}", config.getEventTraceFile());
+            }
+
+            // The controller waits for the caches to sync, unless they were restored from a snapshot
+            deploymentSharedIndexInformer.start();
+            fooSharedIndexInformer.start();
+            sampleController.cachesSynced().thenRun(SampleControllerMain::logHeapUsage);
+            if (snapshots != null) {
+                snapshots.start(Duration.ofSeconds(config.getCacheSnapshotIntervalSeconds()));
+            }
+
+            HotStandbyElection election = null;
+            if (config.isLeaderElection()) {
+                // Informers are running already, as a standby we only hold back the workers
+                sampleController.setLeading(false);
+                election = new HotStandbyElection(client, namespace, config.getLeaderElectionLeaseName(), config.getReplicaIdentity(),
+                        Duration.ofSeconds(config.getLeaderElectionLeaseDurationSeconds()), sampleController::setLeading);
+                election.start();
+            }
 
-            Future<Void> startInformersFuture = informerFactory.startAllRegisteredInformers();
-            startInformersFuture.get();
+            // The JVM exits once all shutdown hooks have returned, so the hook waits for the
+            // cleanup below, which needs the client to still be open
+            CountDownLatch cleanedUp = new CountDownLatch(1);
+            InformerSnapshots finalSnapshots = snapshots;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                // Only finish the reconciles in flight, the keys still queued are left to
+                // whoever leads next instead of holding up the shutdown
+                sampleController.setLeading(false);
+                sampleController.stop();
+                if (!awaitCleanup(cleanedUp) && finalSnapshots != null) {
+                    // Still worth a warm start, the snapshot doesn't need the controller to have stopped
+                    finalSnapshots.writeAll();
+                }
+            }, "controller-shutdown"));
 
             logger.info("Starting Foo Controller");
-            sampleController.run();
+            try {
+                sampleController.run(config.getWorkerThreads(), config.isVirtualThreads());
+            } finally {
+                // Hand leadership and our keys over right away, while the client is still open
+                if (election != null) {
+                    election.close();
+                }
+                if (shardMembership != null) {
+                    shardMembership.close();
+                }
+                if (snapshots != null) {
+                    snapshots.close();
+                }
+                if (eventRecorder != null) {
+                    eventRecorder.close();
+                }
+                cleanedUp.countDown();
+            }
         } catch (KubernetesClientException exception) {
             logger.error("Kubernetes Client Exception : ", exception);
-        } catch (ExecutionException executionException) {
-            logger.info("Exception in starting all registered informers ", executionException);
+        } catch (IOException ioException) {
+            logger.error("Unable to start metrics server or event recording", ioException);
+        }
+    }
+
+    /**
+     * @return whether the cleanup after the controller stopped has finished in time
+     */
+    private static boolean awaitCleanup(CountDownLatch cleanedUp) {
+        try {
+            if (cleanedUp.await(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            logger.warn("Controller didn't stop within {} s, exiting without releasing its Leases", SHUTDOWN_TIMEOUT.getSeconds());
         } catch (InterruptedException interruptedException) {
-            logger.info("Interrupted : ", interruptedException);
             Thread.currentThread().interrupt();
-            interruptedException.printStackTrace();
         }
+        return false;
+    }
+
+    /**
+     * Logs the heap in use once the informer caches are filled, which gives an idea of the
+     * effect of PRUNE_INFORMER_CACHE and DEPLOYMENT_LABEL_SELECTOR. Includes garbage which
+     * hasn't been collected yet, the scale test measures the retained heap.
+     */
+    private static void logHeapUsage() {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        logger.info("Informer caches synced, heap used: {} MiB", heap.getUsed() / (1024 * 1024));
+    }
+
+    /**
+     * One write rate shared by everything the controller sends, to Foos as well as Deployments.
+     */
+    private static AdaptiveRateLimiter newWriteRateLimiter(SampleControllerConfig config, ControllerMetrics metrics) {
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(Math.min(config.getWriteMinQps(), config.getWriteQps()),
+                config.getWriteQps(), config.getWriteBurst());
+        metrics.setWriteRateLimitFunction(rateLimiter::getRate);
+        return rateLimiter;
+    }
+
+    private static MetricsServer startMetricsServer(SampleControllerConfig config, ControllerMetrics metrics) throws IOException {
+        if (config.getMetricsPort() <= 0) {
+            return null;
+        }
+        MetricsServer metricsServer = new MetricsServer(metrics.getRegistry(), config.getMetricsPort());
+        metricsServer.start();
+        return metricsServer;
     }
 }
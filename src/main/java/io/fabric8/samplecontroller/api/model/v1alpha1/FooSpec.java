@@ -1,5 +1,7 @@
 package io.fabric8.samplecontroller.api.model.v1alpha1;
 
+import java.util.Objects;
+
 public class FooSpec {
     private String deploymentName;
     private int replicas;
@@ -20,4 +22,21 @@ public class FooSpec {
     public String getDeploymentName() { return deploymentName; }
 
     public void setDeploymentName(String deploymentName) { this.deploymentName = deploymentName; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        FooSpec fooSpec = (FooSpec) o;
+        return replicas == fooSpec.replicas && Objects.equals(deploymentName, fooSpec.deploymentName);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(deploymentName, replicas);
+    }
 }
@@ -11,6 +11,22 @@ public class FooStatus {
         this.availableReplicas = availableReplicas;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return availableReplicas == ((FooStatus) o).availableReplicas;
+    }
+
+    @Override
+    public int hashCode() {
+        return Integer.hashCode(availableReplicas);
+    }
+
     @Override
     public String toString() {
         return "FooStatus{ availableReplicas=" + availableReplicas + "}";
@@ -0,0 +1,76 @@
+package io.fabric8.samplecontroller.cache;
+
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentSpec;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.controller.SampleController;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Transforms for {@link TransformingItemStore} which reduce cached objects to the fields
+ * {@link SampleController} actually reads. Everything else, like managedFields, pod templates,
+ * status conditions and last-applied annotations, is dropped before the object enters the
+ * indexer.
+ * <p>
+ * Cached objects are only ever read, writes go through merge patches which don't depend on
+ * the cached copy being complete. Labels are kept since the update predicates compare them.
+ */
+public final class CacheTransforms {
+    private CacheTransforms() { }
+
+    /**
+     * Keeps the name, namespace, UID, labels, resource version, generation and owner references,
+     * the spec hash annotation and the replicas.
+     *
+     * @param deployment Deployment as received from the API server, it's not modified
+     * @return a new, pruned Deployment
+     */
+    public static Deployment pruneDeployment(Deployment deployment) {
+        Deployment pruned = new Deployment();
+        pruned.setApiVersion(deployment.getApiVersion());
+        pruned.setKind(deployment.getKind());
+        pruned.setMetadata(pruneMetadata(deployment.getMetadata()));
+        Map<String, String> annotations = deployment.getMetadata().getAnnotations();
+        String specHash = annotations != null ? annotations.get(SampleController.SPEC_HASH_ANNOTATION) : null;
+        if (specHash != null) {
+            pruned.getMetadata().setAnnotations(Collections.singletonMap(SampleController.SPEC_HASH_ANNOTATION, specHash));
+        }
+        if (deployment.getSpec() != null) {
+            DeploymentSpec spec = new DeploymentSpec();
+            spec.setReplicas(deployment.getSpec().getReplicas());
+            pruned.setSpec(spec);
+        }
+        return pruned;
+    }
+
+    /**
+     * Keeps the name, namespace, UID, labels, resource version and generation along with spec and status,
+     * which are small and entirely read by the controller.
+     *
+     * @param foo Foo as received from the API server, it's not modified
+     * @return a new, pruned Foo
+     */
+    public static Foo pruneFoo(Foo foo) {
+        Foo pruned = new Foo();
+        pruned.setMetadata(pruneMetadata(foo.getMetadata()));
+        pruned.setSpec(foo.getSpec());
+        pruned.setStatus(foo.getStatus());
+        return pruned;
+    }
+
+    private static ObjectMeta pruneMetadata(ObjectMeta metadata) {
+        ObjectMeta pruned = new ObjectMeta();
+        pruned.setName(metadata.getName());
+        pruned.setNamespace(metadata.getNamespace());
+        pruned.setUid(metadata.getUid());
+        pruned.setLabels(metadata.getLabels());
+        pruned.setResourceVersion(metadata.getResourceVersion());
+        pruned.setGeneration(metadata.getGeneration());
+        pruned.setDeletionTimestamp(metadata.getDeletionTimestamp());
+        pruned.setOwnerReferences(metadata.getOwnerReferences());
+        return pruned;
+    }
+}
@@ -0,0 +1,191 @@
+package io.fabric8.samplecontroller.cache;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps on-disk snapshots of informer stores, so that a restarted controller can fill its
+ * caches from disk through {@link SharedIndexInformer#initialState} and start reconciling
+ * while the initial LIST is still running. The LIST then replaces the restored objects and
+ * any difference shows up as a regular update or delete event.
+ * <p>
+ * A snapshot is a gzip compressed file holding a header with the time it was written,
+ * followed by every object as a length prefixed JSON document. Files are replaced
+ * atomically, a crash while writing leaves the previous snapshot in place.
+ */
+public class InformerSnapshots implements AutoCloseable {
+    public static final Logger logger = LoggerFactory.getLogger(InformerSnapshots.class.getSimpleName());
+    private static final int MAGIC = 0x53435331;
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final Duration maxAge;
+    private final Map<String, SharedIndexInformer<?>> informers = new LinkedHashMap<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param directory directory holding one snapshot file per informer, created if missing
+     * @param maxAge snapshots older than this aren't restored, objects deleted meanwhile would
+     *               be reconciled as if they still existed until the LIST catches up
+     */
+    public InformerSnapshots(Path directory, Duration maxAge) {
+        this.directory = directory;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Pre-populates the informer with its last snapshot, if there is a recent enough one, and
+     * registers it for the snapshots written from now on. Has to be called before the
+     * informer is started.
+     *
+     * @param name name of the snapshot file, unique per informer
+     * @return number of objects restored, 0 if there was no usable snapshot
+     */
+    public synchronized <T extends HasMetadata> int restore(String name, SharedIndexInformer<T> informer, Class<T> type) {
+        informers.put(name, informer);
+        Path file = getFile(name);
+        List<T> items;
+        try {
+            items = read(file, type, maxAge);
+        } catch (IOException exception) {
+            logger.warn("Ignoring unreadable snapshot {}", file, exception);
+            return 0;
+        }
+        if (!items.isEmpty()) {
+            informer.initialState(items.stream());
+            logger.info("Restored {} {} from {}", items.size(), name, file);
+        }
+        return items.size();
+    }
+
+    /**
+     * Writes snapshots of all registered informers every interval, without blocking.
+     */
+    public synchronized void start(Duration interval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "informer-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, interval.toMillis());
+        scheduler.scheduleWithFixedDelay(this::writeAll, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a snapshot of every registered informer which has synced, so that we never
+     * replace a good snapshot with a partially listed cache.
+     */
+    public synchronized void writeAll() {
+        for (Map.Entry<String, SharedIndexInformer<?>> entry : informers.entrySet()) {
+            SharedIndexInformer<?> informer = entry.getValue();
+            if (!informer.hasSynced()) {
+                continue;
+            }
+            Path file = getFile(entry.getKey());
+            try {
+                long startNanos = System.nanoTime();
+                List<?> items = informer.getIndexer().list();
+                write(file, items);
+                logger.debug("Wrote {} {} to {} in {} ms", items.size(), entry.getKey(), file,
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            } catch (IOException | RuntimeException exception) {
+                logger.warn("Unable to write snapshot {}", file, exception);
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots and writes a last one, so that the next start is as warm
+     * as possible.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        writeAll();
+    }
+
+    private Path getFile(String name) {
+        return directory.resolve(name + SUFFIX);
+    }
+
+    static void write(Path file, Collection<?> items) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(items.size());
+            for (Object item : items) {
+                byte[] json = Serialization.asJson(item).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(json.length);
+                out.write(json);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return objects of the snapshot, empty if there is none or it's older than maxAge
+     */
+    static <T> List<T> read(Path file, Class<T> type, Duration maxAge) throws IOException {
+        InputStream fileStream;
+        try {
+            fileStream = Files.newInputStream(file);
+        } catch (NoSuchFileException exception) {
+            return Collections.emptyList();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(fileStream)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a snapshot of this version");
+            }
+            long ageMillis = System.currentTimeMillis() - in.readLong();
+            if (ageMillis > maxAge.toMillis()) {
+                logger.info("Ignoring snapshot {}, it's {} s old", file, TimeUnit.MILLISECONDS.toSeconds(ageMillis));
+                return Collections.emptyList();
+            }
+            int count = in.readInt();
+            List<T> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] json = new byte[in.readInt()];
+                in.readFully(json);
+                items.add(Serialization.unmarshal(new ByteArrayInputStream(json), type));
+            }
+            return items;
+        }
+    }
+}
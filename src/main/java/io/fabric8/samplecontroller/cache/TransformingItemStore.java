@@ -0,0 +1,78 @@
+package io.fabric8.samplecontroller.cache;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.informers.cache.BasicItemStore;
+import io.fabric8.kubernetes.client.informers.cache.Cache;
+import io.fabric8.kubernetes.client.informers.cache.ItemStore;
+
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * An informer {@link ItemStore} which passes every object through a transform before it's
+ * stored, e.g. one of {@link CacheTransforms}. Add events and the new object of update events
+ * still carry the full object, only the copy kept in the indexer is transformed. The old object
+ * of update events, delete events and resyncs come from the store and carry the transformed object.
+ * <p>
+ * Has to be set via {@link io.fabric8.kubernetes.client.informers.SharedIndexInformer#itemStore(ItemStore)}
+ * before the informer is started.
+ *
+ * @param <T> type of the cached objects
+ */
+public class TransformingItemStore<T extends HasMetadata> implements ItemStore<T> {
+    private final ItemStore<T> delegate;
+    private final UnaryOperator<T> transform;
+
+    public TransformingItemStore(UnaryOperator<T> transform) {
+        this(new BasicItemStore<>(Cache::metaNamespaceKeyFunc), transform);
+    }
+
+    public TransformingItemStore(ItemStore<T> delegate, UnaryOperator<T> transform) {
+        this.delegate = delegate;
+        this.transform = transform;
+    }
+
+    @Override
+    public String getKey(T object) {
+        return delegate.getKey(object);
+    }
+
+    @Override
+    public T put(String key, T object) {
+        return delegate.put(key, transform.apply(object));
+    }
+
+    @Override
+    public T remove(String key) {
+        return delegate.remove(key);
+    }
+
+    @Override
+    public Stream<String> keySet() {
+        return delegate.keySet();
+    }
+
+    @Override
+    public Stream<T> values() {
+        return delegate.values();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public T get(String key) {
+        return delegate.get(key);
+    }
+
+    /**
+     * Cached objects are incomplete, this tells the informer to notify handlers with the
+     * received object instead of reading it back from the store after the initial list.
+     */
+    @Override
+    public boolean isFullState() {
+        return false;
+    }
+}
@@ -0,0 +1,154 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.Status;
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.http.HttpClient;
+import io.fabric8.kubernetes.client.http.HttpRequest;
+import io.fabric8.kubernetes.client.http.HttpResponse;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import io.fabric8.kubernetes.client.utils.URLUtils;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.throttle.AdaptiveRateLimiter;
+import io.fabric8.samplecontroller.throttle.WriteThrottleInterceptor;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The API calls made by {@link SampleController}, issued through the client's asynchronous
+ * HTTP layer so that a reconcile doesn't hold a thread while a request is in flight. Requests
+ * go through the same {@link HttpClient} as the rest of the client, including its
+ * interceptors, authentication and retries.
+ * <p>
+ * Non-2xx responses complete the future with a {@link KubernetesClientException} carrying the
+ * status code, same as the blocking DSL would throw.
+ * <p>
+ * With a write rate limiter, writes are held back until they get a token. The wait is
+ * scheduled, no thread blocks while a write waits for its turn.
+ */
+class AsyncApiClient {
+    private static final String JSON = "application/json";
+    private static final String MERGE_PATCH_JSON = "application/merge-patch+json";
+
+    private final HttpClient httpClient;
+    private final String masterUrl;
+    private AdaptiveRateLimiter writeRateLimiter;
+    private ScheduledExecutorService writeScheduler;
+
+    AsyncApiClient(KubernetesClient kubernetesClient) {
+        this.httpClient = kubernetesClient.getHttpClient();
+        this.masterUrl = kubernetesClient.getMasterUrl().toString();
+    }
+
+    /**
+     * Has to be called before the first request is sent.
+     *
+     * @param writeRateLimiter limiter every write takes a token from before it's sent
+     */
+    void setWriteRateLimiter(AdaptiveRateLimiter writeRateLimiter) {
+        this.writeRateLimiter = writeRateLimiter;
+        if (writeScheduler == null) {
+            writeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "write-throttle");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    CompletableFuture<Deployment> createDeployment(Deployment deployment) {
+        HttpRequest request = newWriteRequestBuilder()
+                .uri(getUrl(Deployment.class, deployment.getMetadata().getNamespace(), null))
+                .post(JSON, Serialization.asJson(deployment))
+                .build();
+        return send(request, Deployment.class, false);
+    }
+
+    /**
+     * @return the Deployment, or null if it doesn't exist
+     */
+    CompletableFuture<Deployment> getDeployment(String namespace, String name) {
+        HttpRequest request = httpClient.newHttpRequestBuilder()
+                .uri(getUrl(Deployment.class, namespace, name))
+                .build();
+        return send(request, Deployment.class, true);
+    }
+
+    CompletableFuture<Deployment> patchDeployment(String namespace, String name, String mergePatch) {
+        HttpRequest request = newWriteRequestBuilder()
+                .uri(getUrl(Deployment.class, namespace, name))
+                .patch(MERGE_PATCH_JSON, mergePatch)
+                .build();
+        return send(request, Deployment.class, false);
+    }
+
+    CompletableFuture<Foo> patchFooStatus(String namespace, String name, String mergePatch) {
+        HttpRequest request = newWriteRequestBuilder()
+                .uri(URLUtils.join(getUrl(Foo.class, namespace, name), "status"))
+                .patch(MERGE_PATCH_JSON, mergePatch)
+                .build();
+        return send(request, Foo.class, false);
+    }
+
+    /**
+     * Writes are marked once they count against the write rate, so that only their responses
+     * are fed back into it.
+     */
+    private HttpRequest.Builder newWriteRequestBuilder() {
+        HttpRequest.Builder builder = httpClient.newHttpRequestBuilder();
+        if (writeRateLimiter != null) {
+            builder.header(WriteThrottleInterceptor.RESERVED_HEADER, "true");
+        }
+        return builder;
+    }
+
+    private <T> CompletableFuture<T> send(HttpRequest request, Class<T> type, boolean nullIfNotFound) {
+        long waitNanos = request.header(WriteThrottleInterceptor.RESERVED_HEADER) != null ? writeRateLimiter.reserve() : 0;
+        if (waitNanos <= 0) {
+            return sendNow(request, type, nullIfNotFound);
+        }
+        CompletableFuture<Void> turn = new CompletableFuture<>();
+        writeScheduler.schedule(() -> turn.complete(null), waitNanos, TimeUnit.NANOSECONDS);
+        return turn.thenCompose(ignored -> sendNow(request, type, nullIfNotFound));
+    }
+
+    private <T> CompletableFuture<T> sendNow(HttpRequest request, Class<T> type, boolean nullIfNotFound) {
+        return httpClient.sendAsync(request, String.class).thenApply(response -> {
+            if (response.isSuccessful()) {
+                return Serialization.unmarshal(response.body(), type);
+            }
+            if (nullIfNotFound && response.code() == HttpURLConnection.HTTP_NOT_FOUND) {
+                return null;
+            }
+            throw requestFailure(request, response);
+        });
+    }
+
+    private static KubernetesClientException requestFailure(HttpRequest request, HttpResponse<String> response) {
+        Status status;
+        try {
+            status = Serialization.unmarshal(response.body(), Status.class);
+        } catch (RuntimeException notAStatus) {
+            status = null;
+        }
+        if (status == null || status.getCode() == null) {
+            status = new StatusBuilder().withCode(response.code()).withMessage(response.body()).build();
+        }
+        return new KubernetesClientException("Failure executing: " + request.method() + " at: " + request.uri()
+                + ". Message: " + status.getMessage() + ".", response.code(), status);
+    }
+
+    private String getUrl(Class<? extends HasMetadata> type, String namespace, String name) {
+        String apiVersion = HasMetadata.getApiVersion(type);
+        String url = URLUtils.join(masterUrl, apiVersion.contains("/") ? "apis" : "api", apiVersion,
+                "namespaces", namespace, HasMetadata.getPlural(type));
+        return name != null ? URLUtils.join(url, name) : url;
+    }
+}
@@ -0,0 +1,145 @@
+package io.fabric8.samplecontroller.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks writes the controller has issued for a Foo but hasn't seen come back through
+ * the Deployment informer yet, modelled after the ReplicaSet controller's ControllerExpectations.
+ * <p>
+ * While expectations for a key are outstanding, the informer cache can't be trusted to
+ * reflect our own writes, so reconciling would just issue the same writes again (and get
+ * a 409 for creates). Expectations expire after a timeout so that a lost watch event can't
+ * block a key forever.
+ */
+public class ControllerExpectations {
+    public static final Logger logger = LoggerFactory.getLogger(ControllerExpectations.class.getSimpleName());
+    public static final long DEFAULT_EXPECTATIONS_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final Map<String, Expectations> expectations = new ConcurrentHashMap<>();
+    private final long timeoutMillis;
+    private final LongSupplier clock;
+
+    public ControllerExpectations() {
+        this(DEFAULT_EXPECTATIONS_TIMEOUT_MILLIS, System::currentTimeMillis);
+    }
+
+    ControllerExpectations(long timeoutMillis, LongSupplier clock) {
+        this.timeoutMillis = timeoutMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Records that we are about to create Deployments for the given key.
+     *
+     * @param key Foo key in format namespace/name
+     * @param adds number of creates issued
+     */
+    public void expectCreations(String key, int adds) {
+        expectations.compute(key, (k, existing) -> {
+            Expectations updated = isReusable(existing) ? existing : new Expectations(clock.getAsLong());
+            updated.adds.addAndGet(adds);
+            return updated;
+        });
+    }
+
+    /**
+     * Records that we are about to update Deployments for the given key.
+     *
+     * @param key Foo key in format namespace/name
+     * @param updates number of updates issued
+     */
+    public void expectUpdates(String key, int updates) {
+        expectations.compute(key, (k, existing) -> {
+            Expectations updated = isReusable(existing) ? existing : new Expectations(clock.getAsLong());
+            updated.updates.addAndGet(updates);
+            return updated;
+        });
+    }
+
+    /**
+     * Lowers the expected creates, either because the informer observed a create or because
+     * the create request failed and will never be observed.
+     *
+     * @param key Foo key in format namespace/name
+     */
+    public void creationObserved(String key) {
+        Expectations existing = expectations.get(key);
+        if (existing != null) {
+            existing.adds.decrementAndGet();
+        }
+    }
+
+    /**
+     * Lowers the expected updates, either because the informer observed an update or because
+     * the update request failed and will never be observed.
+     *
+     * @param key Foo key in format namespace/name
+     */
+    public void updateObserved(String key) {
+        Expectations existing = expectations.get(key);
+        if (existing != null) {
+            existing.updates.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param key Foo key in format namespace/name
+     * @return true if there are no outstanding expectations for the key, they were all
+     * observed or they have expired
+     */
+    public boolean satisfiedExpectations(String key) {
+        Expectations existing = expectations.get(key);
+        if (existing == null || existing.isFulfilled()) {
+            return true;
+        }
+        if (existing.isExpired(clock.getAsLong(), timeoutMillis)) {
+            logger.warn("Expectations for {} expired, adds: {}, updates: {}", key, existing.adds.get(), existing.updates.get());
+            expectations.remove(key, existing);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Forgets about a key, e.g. once the Foo has been deleted.
+     *
+     * @param key Foo key in format namespace/name
+     */
+    public void deleteExpectations(String key) {
+        expectations.remove(key);
+    }
+
+    /**
+     * Observed events can push the counters below zero, e.g. a Deployment status update
+     * after our own write has already been observed. Fulfilled or expired records are
+     * therefore started from scratch instead of being added to.
+     */
+    private boolean isReusable(Expectations existing) {
+        return existing != null && !existing.isFulfilled() && !existing.isExpired(clock.getAsLong(), timeoutMillis);
+    }
+
+    private static class Expectations {
+        private final AtomicInteger adds = new AtomicInteger();
+        private final AtomicInteger updates = new AtomicInteger();
+        private final long timestamp;
+
+        private Expectations(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        private boolean isFulfilled() {
+            return adds.get() <= 0 && updates.get() <= 0;
+        }
+
+        private boolean isExpired(long now, long timeoutMillis) {
+            return now - timestamp > timeoutMillis;
+        }
+    }
+}
@@ -1,65 +1,177 @@
 package io.fabric8.samplecontroller.controller;
 
 import io.fabric8.kubernetes.api.model.HasMetadata;
-import io.fabric8.kubernetes.api.model.KubernetesResourceList;
 import io.fabric8.kubernetes.api.model.OwnerReference;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
 import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.api.model.apps.DeploymentSpec;
+import io.fabric8.kubernetes.api.model.apps.DeploymentSpecBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
-import io.fabric8.kubernetes.client.dsl.MixedOperation;
-import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.base.PatchContext;
+import io.fabric8.kubernetes.client.dsl.base.PatchType;
 import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
 import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
 import io.fabric8.kubernetes.client.informers.cache.Cache;
-import io.fabric8.kubernetes.client.informers.cache.Lister;
+import io.fabric8.kubernetes.client.utils.Serialization;
 import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
-import io.fabric8.samplecontroller.api.model.v1alpha1.FooSpec;
 import io.fabric8.samplecontroller.api.model.v1alpha1.FooStatus;
+import io.fabric8.samplecontroller.logging.SampledLogger;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics.ReconcileOutcome;
+import io.fabric8.samplecontroller.metrics.Counter;
+import io.fabric8.samplecontroller.predicate.UpdatePredicate;
+import io.fabric8.samplecontroller.shard.ShardMembership;
+import io.fabric8.samplecontroller.shard.ShardRing;
+import io.fabric8.samplecontroller.throttle.AdaptiveRateLimiter;
+import io.fabric8.samplecontroller.throttle.WriteThrottleInterceptor;
+import io.fabric8.samplecontroller.workqueue.Priority;
+import io.fabric8.samplecontroller.workqueue.RateLimitingWorkQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class SampleController {
-    private final BlockingQueue<String> workqueue;
+    private final RateLimitingWorkQueue<String> workqueue;
     private final SharedIndexInformer<Foo> fooInformer;
     private final SharedIndexInformer<Deployment> deploymentInformer;
-    private final Lister<Foo> fooLister;
     private final KubernetesClient kubernetesClient;
-    private final MixedOperation<Foo, KubernetesResourceList<Foo>, Resource<Foo>> fooClient;
+    private final ControllerExpectations expectations = new ControllerExpectations();
+    private final ControllerMetrics metrics;
+    private final long createdAtNanos = System.nanoTime();
+    private UpdatePredicate<Foo> fooUpdatePredicate = DEFAULT_FOO_UPDATE_PREDICATE;
+    private UpdatePredicate<Deployment> deploymentUpdatePredicate = DEFAULT_DEPLOYMENT_UPDATE_PREDICATE;
+    private final AsyncApiClient apiClient;
+    private Semaphore inFlightRequests;
+    private int maxInFlightRequests;
+    private int maxBatchSize;
+    private volatile String[] namespaces;
+    private ShardMembership shardMembership;
+    private volatile ShardRing shardRing;
+    private final Object leadershipLock = new Object();
+    private volatile boolean leading = true;
+    private final CompletableFuture<Void> cachesSynced = new CompletableFuture<>();
+    private boolean warmStart;
+    private final AtomicBoolean firstReconcileCompleted = new AtomicBoolean();
+    private long resyncPeriodMillis;
+    private double resyncJitterFactor;
+    private final SampledLogger enqueueLog = new SampledLogger(logger, LOG_SAMPLE_INTERVAL);
+    private final SampledLogger orphanLog = new SampledLogger(logger, LOG_SAMPLE_INTERVAL);
+    private final SampledLogger skippedLog = new SampledLogger(logger, LOG_SAMPLE_INTERVAL);
     public static final Logger logger = LoggerFactory.getLogger(SampleController.class.getSimpleName());
+    /**
+     * Messages which would show up once per event are logged at most once per interval at
+     * info level, every single one of them at debug level
+     */
+    static final Duration LOG_SAMPLE_INTERVAL = Duration.ofSeconds(10);
+    public static final String DEPLOYMENT_OWNER_UID_INDEX = "ownerUid";
+    public static final String SPEC_HASH_ANNOTATION = "samplecontroller.k8s.io/spec-hash";
+    /**
+     * Label carrying the name of the owning Foo, present on every Deployment this controller creates
+     */
+    public static final String CONTROLLER_LABEL = "controller";
+    /**
+     * Foo updates worth a reconcile: resyncs, spec and label changes, and a status which doesn't
+     * match the spec. Our own status writes are dropped, they would only cause a no-op reconcile.
+     */
+    public static final UpdatePredicate<Foo> DEFAULT_FOO_UPDATE_PREDICATE = UpdatePredicate.<Foo>resync()
+            .or(UpdatePredicate.generationChanged())
+            .or(UpdatePredicate.fieldChanged(Foo::getSpec))
+            .or(UpdatePredicate.labelsChanged())
+            .or(UpdatePredicate.newObject(foo -> !isStatusUpToDate(foo)));
+    /**
+     * Deployment updates worth a reconcile of the owning Foo: spec, label, owner and spec hash
+     * changes. Status-only updates, like a pod becoming ready, are dropped since the
+     * controller doesn't act on the Deployment status.
+     */
+    public static final UpdatePredicate<Deployment> DEFAULT_DEPLOYMENT_UPDATE_PREDICATE = UpdatePredicate.<Deployment>generationChanged()
+            .or(UpdatePredicate.labelsChanged())
+            .or(UpdatePredicate.ownerReferencesChanged())
+            .or(UpdatePredicate.annotationChanged(SPEC_HASH_ANNOTATION));
+    /**
+     * Deployment updates which can be the result of our own patch. Status-only updates, e.g. of
+     * an older version which arrive after our patch was sent, mustn't satisfy the expectations.
+     */
+    static final UpdatePredicate<Deployment> DEPLOYMENT_WRITE_OBSERVED = UpdatePredicate.<Deployment>generationChanged()
+            .or(UpdatePredicate.annotationChanged(SPEC_HASH_ANNOTATION));
 
-    public SampleController(KubernetesClient kubernetesClient, MixedOperation<Foo, KubernetesResourceList<Foo>, Resource<Foo>> fooClient, SharedIndexInformer<Deployment> deploymentInformer, SharedIndexInformer<Foo> fooInformer, String namespace) {
+    public SampleController(KubernetesClient kubernetesClient, SharedIndexInformer<Deployment> deploymentInformer, SharedIndexInformer<Foo> fooInformer, String namespace) {
+        this(kubernetesClient, deploymentInformer, fooInformer, namespace, new ControllerMetrics());
+    }
+
+    /**
+     * @param namespace namespace to handle Foos in, null for all namespaces the informers watch
+     */
+    public SampleController(KubernetesClient kubernetesClient, SharedIndexInformer<Deployment> deploymentInformer, SharedIndexInformer<Foo> fooInformer, String namespace, ControllerMetrics metrics) {
         this.kubernetesClient = kubernetesClient;
-        this.fooClient = fooClient;
-        this.fooLister = new Lister<>(fooInformer.getIndexer(), namespace);
+        this.metrics = metrics;
+        this.apiClient = new AsyncApiClient(kubernetesClient);
+        this.namespaces = namespace != null ? new String[] {namespace} : new String[0];
         this.fooInformer = fooInformer;
         this.deploymentInformer = deploymentInformer;
-        this.workqueue = new ArrayBlockingQueue<>(1024);
+        // Index Deployments by the UID of their controlling owner so that we can look up
+        // the Deployments of a Foo without going through all of them. Indexers need to be
+        // added before the informer is started.
+        this.deploymentInformer.addIndexers(Collections.singletonMap(DEPLOYMENT_OWNER_UID_INDEX, SampleController::controllerUidIndexFunc));
+        this.workqueue = new RateLimitingWorkQueue<>(RateLimitingWorkQueue.defaultControllerRateLimiter(), metrics);
+        this.metrics.setWorkQueueDepthFunction(workqueue::len);
+        this.metrics.leading(leading);
         initInformerEventHandlers();
     }
 
     private void initInformerEventHandlers() {
         // Set up an event handler for when Foo resources change
         fooInformer.addEventHandler(new ResourceEventHandler<Foo>() {
+            private final Counter.Child addEvents = metrics.informerEvents("foos", "add");
+            private final Counter.Child updateEvents = metrics.informerEvents("foos", "update");
+            private final Counter.Child deleteEvents = metrics.informerEvents("foos", "delete");
+            private final Counter.Child droppedUpdateEvents = metrics.informerEventsDropped("foos", "update");
+
             @Override
             public void onAdd(Foo foo) {
-                enqueueFoo(foo);
+                addEvents.inc();
+                enqueueFoo(foo, Priority.HIGH);
             }
 
             @Override
             public void onUpdate(Foo foo, Foo newFoo) {
-                enqueueFoo(newFoo);
+                updateEvents.inc();
+                if (!fooUpdatePredicate.test(foo, newFoo)) {
+                    droppedUpdateEvents.inc();
+                    return;
+                }
+                enqueueFoo(newFoo, getUpdatePriority(foo, newFoo));
             }
 
             @Override
             public void onDelete(Foo foo, boolean b) {
-                // Do nothing
+                deleteEvents.inc();
+                expectations.deleteExpectations(Cache.metaNamespaceKeyFunc(foo));
             }
         });
 
@@ -70,157 +182,921 @@ public class SampleController {
         // handling Deployment resources. More info on this pattern:
         // https://github.com/kubernetes/community/blob/8cafef897a22026d42f5e5bb3f104febe7e29830/contributors/devel/controllers.md
         deploymentInformer.addEventHandler(new ResourceEventHandler<Deployment>() {
+            private final Counter.Child addEvents = metrics.informerEvents("deployments", "add");
+            private final Counter.Child updateEvents = metrics.informerEvents("deployments", "update");
+            private final Counter.Child deleteEvents = metrics.informerEvents("deployments", "delete");
+            private final Counter.Child droppedUpdateEvents = metrics.informerEventsDropped("deployments", "update");
+
             @Override
             public void onAdd(Deployment deployment) {
-                handleObject(deployment);
+                addEvents.inc();
+                // The owner key is built once and serves the expectations, the cache lookup
+                // and the work queue
+                OwnerReference ownerReference = getFooOwnerReference(deployment);
+                if (ownerReference == null) {
+                    return;
+                }
+                String ownerKey = Cache.namespaceKeyFunc(deployment.getMetadata().getNamespace(), ownerReference.getName());
+                expectations.creationObserved(ownerKey);
+                enqueueOwner(deployment, ownerReference, ownerKey, Priority.NORMAL);
             }
 
             @Override
             public void onUpdate(Deployment oldDeployment, Deployment newDeployment) {
+                updateEvents.inc();
                 // Periodic resync will send update events for all known Deployments.
                 // Two different versions of the same Deployment will always have different RVs.
                 if (oldDeployment.getMetadata().getResourceVersion().equals(newDeployment.getMetadata().getResourceVersion())) {
+                    droppedUpdateEvents.inc();
+                    return;
+                }
+                OwnerReference ownerReference = getFooOwnerReference(newDeployment);
+                String ownerKey = null;
+                if (ownerReference != null) {
+                    ownerKey = Cache.namespaceKeyFunc(newDeployment.getMetadata().getNamespace(), ownerReference.getName());
+                    if (DEPLOYMENT_WRITE_OBSERVED.test(oldDeployment, newDeployment)) {
+                        expectations.updateObserved(ownerKey);
+                    }
+                }
+                // Expectations have to see every write, only the enqueue is filtered
+                if (!deploymentUpdatePredicate.test(oldDeployment, newDeployment)) {
+                    droppedUpdateEvents.inc();
                     return;
                 }
-                handleObject(newDeployment);
+                if (ownerKey != null) {
+                    enqueueOwner(newDeployment, ownerReference, ownerKey, Priority.NORMAL);
+                }
             }
 
             @Override
             public void onDelete(Deployment deployment, boolean b) {
-                handleObject(deployment);
+                deleteEvents.inc();
+                // The Foo is down until we recreate it
+                handleObject(deployment, Priority.HIGH);
             }
         });
     }
 
     public void run() {
+        run(1, false);
+    }
+
+    /**
+     * Starts the controller and blocks until the work queue is shut down or the
+     * calling thread is interrupted. A key is never processed by two workers at
+     * the same time, the work queue only hands it out again once it's done.
+     *
+     * @param workers number of keys which can be reconciled concurrently
+     * @param virtualThreads whether to reconcile every key on its own virtual thread (JDK 21+),
+     *                       falls back to platform worker threads on older JDKs
+     */
+    public void run(int workers, boolean virtualThreads) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1, got " + workers);
+        }
         logger.info("Starting {} controller", Foo.class.getSimpleName());
+        if (!awaitCachesSynced()) {
+            return;
+        }
+
+        ExecutorService virtualThreadExecutor = virtualThreads ? newVirtualThreadPerTaskExecutor() : null;
+        if (virtualThreadExecutor != null) {
+            logger.info("Starting virtual thread dispatcher with at most {} concurrent reconciles", workers);
+            runVirtualThreadDispatcher(virtualThreadExecutor, workers);
+        } else if (maxBatchSize > 0) {
+            logger.info("Starting {} workers reconciling batches of up to {} Foos", workers, maxBatchSize);
+            runWorkers(workers, this::runBatchWorker);
+        } else if (inFlightRequests != null) {
+            logger.info("Starting {} workers with at most {} API requests in flight", workers, maxInFlightRequests);
+            runWorkers(workers, this::runWorker);
+            // Let in-flight reconciles finish before returning
+            inFlightRequests.acquireUninterruptibly(maxInFlightRequests);
+        } else {
+            logger.info("Starting {} workers", workers);
+            runWorkers(workers, this::runWorker);
+        }
+    }
+
+    /**
+     * Waits for the initial LIST of both informers, starting them if that hasn't happened yet.
+     * With a warm start the caches already hold a snapshot, so the keys of the snapshot are
+     * enqueued and workers start right away, the informers sync in the background.
+     *
+     * @return false if the informers failed to start or we got interrupted
+     */
+    private boolean awaitCachesSynced() {
+        CompletableFuture.allOf(deploymentInformer.start().toCompletableFuture(), fooInformer.start().toCompletableFuture())
+                .whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        cachesSynced.completeExceptionally(throwable);
+                        return;
+                    }
+                    metrics.informersSynced(System.nanoTime() - createdAtNanos);
+                    cachesSynced.complete(null);
+                });
+        if (warmStart && !cachesSynced.isDone()) {
+            int restored = 0;
+            for (String key : fooInformer.getIndexer().listKeys()) {
+                if (isResponsibleFor(key)) {
+                    workqueue.add(key, Priority.LOW);
+                    restored++;
+                }
+            }
+            logger.info("Reconciling {} Foos from the restored caches while the informers sync", restored);
+            return true;
+        }
         logger.info("Waiting for informer caches to sync");
-        while (!deploymentInformer.hasSynced() || !fooInformer.hasSynced()) {
-            // Wait till Informer syncs
+        try {
+            cachesSynced.get();
+            return true;
+        } catch (ExecutionException executionException) {
+            logger.error("Informer caches failed to sync", executionException.getCause());
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            logger.error("controller interrupted..");
         }
+        return false;
+    }
+
+    /**
+     * Future completing once both informers have listed everything, failing if one of them
+     * couldn't be started. Also completes for a warm start, once the caches are in sync with
+     * the API server again.
+     */
+    public CompletableFuture<Void> cachesSynced() {
+        return cachesSynced;
+    }
 
+    /**
+     * @return whether the informer caches have synced, used as readiness check
+     */
+    public boolean isReady() {
+        return cachesSynced.isDone() && !cachesSynced.isCompletedExceptionally();
+    }
+
+    /**
+     * Tells the controller that the informer caches were pre-populated from a snapshot,
+     * see {@link io.fabric8.samplecontroller.cache.InformerSnapshots}. Workers then start on
+     * the restored Foos right away instead of waiting for the initial LIST, Foos which
+     * changed meanwhile are reconciled again once their update events come in. Has to be
+     * called before {@link #run(int, boolean)}.
+     *
+     * @param warmStart whether the caches were restored
+     */
+    public void setWarmStart(boolean warmStart) {
+        this.warmStart = warmStart;
+    }
+
+    /**
+     * Resyncs every Foo periodically, in the {@link Priority#LOW} lane. Unlike an informer
+     * resync, which enqueues all Foos at once, every Foo is scheduled on its own a period
+     * after it was last reconciled, plus a random jitter. Resyncs therefore trickle in
+     * instead of arriving as one spike, and events never wait behind them. The informers
+     * shouldn't resync on their own then.
+     *
+     * @param period minimum time between two reconciles of a Foo caused by resyncs
+     * @param jitterFactor every resync is delayed by up to this fraction of the period on top
+     */
+    public void enableResync(Duration period, double jitterFactor) {
+        if (period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("period must be positive, got " + period);
+        }
+        if (jitterFactor < 0) {
+            throw new IllegalArgumentException("jitterFactor must not be negative, got " + jitterFactor);
+        }
+        this.resyncPeriodMillis = period.toMillis();
+        this.resyncJitterFactor = jitterFactor;
+    }
+
+    private void scheduleResync(String key) {
+        if (resyncPeriodMillis > 0) {
+            long delayMillis = resyncPeriodMillis + (long) (ThreadLocalRandom.current().nextDouble() * resyncJitterFactor * resyncPeriodMillis);
+            workqueue.addAfter(key, delayMillis, Priority.LOW);
+        }
+    }
+
+    /**
+     * Switches workers to asynchronous reconciles: a worker hands a key to the API client and
+     * goes on with the next key right away, instead of waiting for the round trip. A key is
+     * still only handed out again once its reconcile has completed. Ignored when running on
+     * virtual threads, which make blocking cheap already. Has to be called before {@link #run(int, boolean)}.
+     *
+     * @param maxInFlightRequests number of reconciles, and therefore API requests, in flight at
+     *                            once across all workers. Workers block once it's reached.
+     */
+    public void enableAsyncReconcile(int maxInFlightRequests) {
+        if (maxInFlightRequests < 1) {
+            throw new IllegalArgumentException("maxInFlightRequests must be at least 1, got " + maxInFlightRequests);
+        }
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.inFlightRequests = new Semaphore(maxInFlightRequests);
+    }
+
+    /**
+     * Switches workers to batch reconciles, meant for bulk changes like thousands of Foos
+     * being scaled at once. A worker takes up to maxBatchSize keys off the work queue at once
+     * and works out the Deployment writes of all of them from the informer cache, namespace by
+     * namespace. It sends all of these writes at once, followed by all Foo status writes in one
+     * burst once the Deployment writes are done. Each key is still reconciled, requeued on
+     * failure and marked as done on its own, a failed key doesn't affect the rest of the batch.
+     * Takes precedence over {@link #enableAsyncReconcile(int)}, ignored when running on
+     * virtual threads. Has to be called before {@link #run(int, boolean)}.
+     *
+     * @param maxBatchSize number of keys a worker reconciles at once, a worker has at most as
+     *                     many API requests in flight
+     */
+    public void enableBatchReconcile(int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1, got " + maxBatchSize);
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Holds back the controller's writes, Deployment creates and patches as well as Foo status
+     * patches, until the given rate limiter hands out a token. Waiting writes are scheduled,
+     * they don't block workers or the client's request path. Has to be called before
+     * {@link #run(int, boolean)}.
+     *
+     * @param writeRateLimiter limiter shared with the {@link WriteThrottleInterceptor} which
+     *                         feeds the API server's responses back into it
+     */
+    public void enableWriteThrottle(AdaptiveRateLimiter writeRateLimiter) {
+        apiClient.setWriteRateLimiter(writeRateLimiter);
+    }
+
+    /**
+     * Hot standby support: while not leading, informers keep their caches up to date and
+     * events keep being enqueued, but workers don't take any keys off the work queue. Once
+     * leading again, workers go on right away with the keys which accumulated meanwhile,
+     * nothing has to be listed or synced first. Reconciles already running when leadership is
+     * lost are completed. Controllers lead by default.
+     *
+     * @param leading whether this controller may reconcile
+     */
+    public void setLeading(boolean leading) {
+        synchronized (leadershipLock) {
+            this.leading = leading;
+            leadershipLock.notifyAll();
+        }
+        metrics.leading(leading);
+        logger.info(leading ? "Started leading, draining {} queued keys" : "Stopped leading, {} keys queued", workqueue.len());
+    }
+
+    public boolean isLeading() {
+        return leading;
+    }
+
+    /**
+     * Restricts the controller to Foos in the given namespaces, on top of what the informers
+     * watch. Useful when watching all namespaces but only some of them should be handled.
+     *
+     * @param namespaces namespaces to handle, empty for all namespaces the informers see
+     */
+    public void setNamespaces(Collection<String> namespaces) {
+        this.namespaces = new HashSet<>(namespaces).toArray(new String[0]);
+    }
+
+    /**
+     * Only handles the Foo keys the given membership assigns to this replica. When replicas
+     * join or leave, the keys this replica takes over are enqueued, the ones it hands off are
+     * skipped once they come up in the work queue. Has to be called before the informers are
+     * started.
+     *
+     * @param shardMembership started membership of this replica
+     */
+    public void enableSharding(ShardMembership shardMembership) {
+        this.shardMembership = shardMembership;
+        this.shardRing = shardMembership.getRing();
+        shardMembership.addListener(this::onShardRingChanged);
+    }
+
+    /**
+     * @param key Foo key in format namespace/name
+     * @return whether this controller handles the key, considering namespaces and shards
+     */
+    boolean isResponsibleFor(String key) {
+        return isResponsibleFor(key, key.indexOf('/'));
+    }
+
+    /**
+     * @param separator index of the '/' in the key, so that the key is only searched once
+     */
+    private boolean isResponsibleFor(String key, int separator) {
+        String[] handledNamespaces = namespaces;
+        if (handledNamespaces.length > 0 && !isInNamespaces(key, separator, handledNamespaces)) {
+            return false;
+        }
+        return shardMembership == null || shardMembership.owns(key);
+    }
+
+    /**
+     * Compares the namespace part of the key in place, there are only a few namespaces and
+     * this runs for every event.
+     */
+    private static boolean isInNamespaces(String key, int separator, String[] namespaces) {
+        for (String namespace : namespaces) {
+            if (namespace.length() == separator && key.startsWith(namespace)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void onShardRingChanged(ShardRing newRing) {
+        ShardRing oldRing = shardRing;
+        shardRing = newRing;
+        String identity = shardMembership.getIdentity();
+        int takenOver = 0;
+        for (String key : fooInformer.getIndexer().listKeys()) {
+            if (identity.equals(newRing.owner(key)) && !identity.equals(oldRing.owner(key)) && isResponsibleFor(key)) {
+                workqueue.add(key);
+                takenOver++;
+            }
+        }
+        logger.info("Shards rebalanced across {}, took over {} Foos", newRing.getMembers(), takenOver);
+    }
+
+    /**
+     * Replaces the filter in front of the work queue for Foo update events. Has to be
+     * called before the informers are started.
+     *
+     * @param fooUpdatePredicate decides which Foo updates enqueue the Foo
+     */
+    public void setFooUpdatePredicate(UpdatePredicate<Foo> fooUpdatePredicate) {
+        this.fooUpdatePredicate = fooUpdatePredicate;
+    }
+
+    /**
+     * Replaces the filter in front of the work queue for Deployment update events. Has to be
+     * called before the informers are started.
+     *
+     * @param deploymentUpdatePredicate decides which Deployment updates enqueue the owning Foo
+     */
+    public void setDeploymentUpdatePredicate(UpdatePredicate<Deployment> deploymentUpdatePredicate) {
+        this.deploymentUpdatePredicate = deploymentUpdatePredicate;
+    }
+
+    RateLimitingWorkQueue<String> getWorkQueue() {
+        return workqueue;
+    }
+
+    /**
+     * Shuts down the work queue, {@link #run()} returns once the items currently
+     * being processed are done.
+     */
+    public void stop() {
+        workqueue.shutDown();
+        synchronized (leadershipLock) {
+            leadershipLock.notifyAll();
+        }
+    }
+
+    /**
+     * Blocks while this controller isn't leading, returns right away once the work queue is
+     * shut down so that workers can exit.
+     */
+    private void awaitLeadership() throws InterruptedException {
+        synchronized (leadershipLock) {
+            while (!leading && !workqueue.isShuttingDown()) {
+                leadershipLock.wait();
+            }
+        }
+    }
+
+    /**
+     * @return whether the key was put back because leadership was lost while waiting for it
+     */
+    private boolean requeueIfNotLeading(String key) {
+        if (leading) {
+            return false;
+        }
+        workqueue.requeue(key);
+        return true;
+    }
+
+    private void runWorkers(int workers, Runnable worker) {
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers,
+                runnable -> new Thread(runnable, "sample-controller-worker-" + workerCount.incrementAndGet()));
+        for (int i = 0; i < workers; i++) {
+            executor.execute(worker);
+        }
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting till the work queue is shut down
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            logger.error("controller interrupted..");
+            stop();
+            executor.shutdownNow();
+        }
+    }
+
+    private void runWorker() {
         while (!Thread.currentThread().isInterrupted()) {
             try {
-                logger.info("trying to fetch item from workqueue...");
-                if (workqueue.isEmpty()) {
-                    logger.info("Work Queue is empty");
+                awaitLeadership();
+                String key = workqueue.get();
+                if (key == null) {
+                    logger.info("Work queue has been shut down");
+                    return;
+                }
+                if (requeueIfNotLeading(key)) {
+                    continue;
                 }
-                String key = workqueue.take();
-                Objects.requireNonNull(key, "key can't be null");
-                logger.info("Got {}", key);
-                if (key.isEmpty() || (!key.contains("/"))) {
-                    logger.warn("invalid resource key: {}", key);
+                if (inFlightRequests != null) {
+                    // A reconcile has at most one request in flight at a time, so a permit
+                    // per reconcile bounds the requests
+                    inFlightRequests.acquire();
+                    processItem(key).whenComplete((ignored, throwable) -> inFlightRequests.release());
+                } else {
+                    processItem(key).join();
                 }
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                logger.error("worker interrupted..");
+            }
+        }
+    }
 
-                // Get the Foo resource's name from key which is in format namespace/name
-                String name = key.split("/")[1];
-                Foo foo = fooLister.get(key.split("/")[1]);
-                if (foo == null) {
-                    logger.error("Foo {} in workqueue no longer exists", name);
+    private void runBatchWorker() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                awaitLeadership();
+                List<String> keys = workqueue.getBatch(maxBatchSize);
+                if (keys == null) {
+                    logger.info("Work queue has been shut down");
                     return;
                 }
-                reconcile(foo);
-
+                List<String> leadingKeys = new ArrayList<>(keys.size());
+                for (String key : keys) {
+                    if (!requeueIfNotLeading(key)) {
+                        leadingKeys.add(key);
+                    }
+                }
+                processBatch(leadingKeys).join();
             } catch (InterruptedException interruptedException) {
                 Thread.currentThread().interrupt();
-                logger.error("controller interrupted..");
+                logger.error("worker interrupted..");
             }
         }
     }
 
+    /**
+     * Takes keys off the work queue on the calling thread and reconciles each of them
+     * on a fresh virtual thread, bounded by a semaphore so that we never have more than
+     * maxConcurrent reconciles in flight.
+     */
+    private void runVirtualThreadDispatcher(ExecutorService executor, int maxConcurrent) {
+        Semaphore permits = new Semaphore(maxConcurrent);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                permits.acquire();
+                awaitLeadership();
+                String key = workqueue.get();
+                if (key == null) {
+                    logger.info("Work queue has been shut down");
+                    break;
+                }
+                if (requeueIfNotLeading(key)) {
+                    permits.release();
+                    continue;
+                }
+                executor.execute(() -> {
+                    try {
+                        processItem(key).join();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            // Let in-flight reconciles finish before returning, same as the platform workers
+            permits.acquire(maxConcurrent - 1);
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+            logger.error("controller interrupted..");
+            stop();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Reconciles a single key taken off the work queue. Failed keys are
+     * requeued with a per-key exponential backoff, successful ones are forgotten
+     * so that their backoff starts from scratch next time. The key is only marked
+     * as done once the reconcile has completed.
+     *
+     * @param key key returned by the work queue, in format namespace/name
+     * @return future completing once the key has been marked as done, it never fails
+     */
+    private CompletableFuture<Void> processItem(String key) {
+        Foo foo = getFooToReconcile(key);
+        if (foo == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long startNanos = System.nanoTime();
+        CompletableFuture<ReconcileOutcome> reconciled;
+        try {
+            reconciled = reconcileAsync(foo);
+        } catch (RuntimeException exception) {
+            reconciled = failedFuture(exception);
+        }
+        return completeItem(key, reconciled, startNanos);
+    }
+
+    /**
+     * Reconciles the keys of a batch together, each of them with the same outcome as
+     * {@link #processItem(String)} would have. All Deployment writes are sent at once,
+     * grouped by namespace. Once they are done, the status writes of all Foos whose
+     * Deployment is in sync are sent at once as well.
+     *
+     * @param keys keys returned by the work queue, in format namespace/name
+     * @return future completing once every key has been marked as done, it never fails
+     */
+    private CompletableFuture<Void> processBatch(List<String> keys) {
+        Map<String, Map<String, Foo>> foosByNamespace = new TreeMap<>();
+        for (String key : keys) {
+            Foo foo = getFooToReconcile(key);
+            if (foo != null) {
+                foosByNamespace.computeIfAbsent(foo.getMetadata().getNamespace(), namespace -> new LinkedHashMap<>()).put(key, foo);
+            }
+        }
+        long startNanos = System.nanoTime();
+        List<String> batchKeys = new ArrayList<>(keys.size());
+        List<Foo> batchFoos = new ArrayList<>(keys.size());
+        List<CompletableFuture<DeploymentSync>> deploymentSyncs = new ArrayList<>(keys.size());
+        for (Map.Entry<String, Map<String, Foo>> namespaceFoos : foosByNamespace.entrySet()) {
+            logger.debug("Reconciling {} Foos in namespace {}", namespaceFoos.getValue().size(), namespaceFoos.getKey());
+            for (Map.Entry<String, Foo> keyFoo : namespaceFoos.getValue().entrySet()) {
+                CompletableFuture<DeploymentSync> deploymentSync;
+                try {
+                    deploymentSync = reconcileDeploymentAsync(keyFoo.getValue());
+                } catch (RuntimeException exception) {
+                    deploymentSync = failedFuture(exception);
+                }
+                batchKeys.add(keyFoo.getKey());
+                batchFoos.add(keyFoo.getValue());
+                deploymentSyncs.add(deploymentSync);
+            }
+        }
+        // Failed Deployment writes only fail their own key, the status burst goes out regardless
+        CompletableFuture<Void> deploymentsWritten = CompletableFuture.allOf(deploymentSyncs.stream()
+                .map(deploymentSync -> deploymentSync.handle((ignored, throwable) -> null))
+                .toArray(CompletableFuture<?>[]::new));
+        List<CompletableFuture<Void>> completed = new ArrayList<>(batchKeys.size());
+        for (int i = 0; i < batchKeys.size(); i++) {
+            Foo foo = batchFoos.get(i);
+            CompletableFuture<DeploymentSync> deploymentSync = deploymentSyncs.get(i);
+            CompletableFuture<ReconcileOutcome> reconciled = deploymentsWritten
+                    .thenCompose(ignored -> deploymentSync)
+                    .thenCompose(sync -> updateStatusIfSynced(foo, sync));
+            completed.add(completeItem(batchKeys.get(i), reconciled, startNanos));
+        }
+        return CompletableFuture.allOf(completed.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Looks up the Foo of a key taken off the work queue. Keys which can't or mustn't be
+     * reconciled by this controller are forgotten and marked as done right away.
+     *
+     * @param key key returned by the work queue, in format namespace/name
+     * @return Foo to reconcile, null if the key is done already
+     */
+    private Foo getFooToReconcile(String key) {
+        logger.debug("Got {}", key);
+        int separator = key.indexOf('/');
+        if (separator < 0) {
+            // Requeuing an invalid key would never succeed
+            logger.warn("invalid resource key: {}", key);
+            workqueue.forget(key);
+            workqueue.done(key);
+            return null;
+        }
+
+        if (!isResponsibleFor(key, separator)) {
+            // Handed off to another replica while waiting in the queue
+            logger.debug("Foo {} is no longer handled by this controller, skipping", key);
+            skippedLog.info("Skipping Foo {}, it's no longer handled by this controller", key);
+            workqueue.forget(key);
+            workqueue.done(key);
+            return null;
+        }
+        Foo foo = fooInformer.getIndexer().getByKey(key);
+        if (foo == null) {
+            logger.error("Foo {} in workqueue no longer exists", key);
+            workqueue.forget(key);
+            workqueue.done(key);
+        }
+        return foo;
+    }
+
+    /**
+     * Records the outcome of a reconcile and marks its key as done. Failed keys are
+     * requeued with backoff.
+     *
+     * @return future completing once the key has been marked as done, it never fails
+     */
+    private CompletableFuture<Void> completeItem(String key, CompletableFuture<ReconcileOutcome> reconciled, long startNanos) {
+        return reconciled.handle((outcome, throwable) -> {
+            if (throwable == null) {
+                metrics.reconciled(outcome, startNanos);
+                if (firstReconcileCompleted.compareAndSet(false, true)) {
+                    metrics.firstReconcileCompleted(System.nanoTime() - createdAtNanos);
+                }
+                scheduleResync(key);
+                workqueue.forget(key);
+            } else {
+                metrics.reconciled(ReconcileOutcome.ERROR, startNanos);
+                logger.error("Error syncing Foo {}, requeuing ({} retries so far)", key, workqueue.numRequeues(key), unwrap(throwable));
+                workqueue.addRateLimited(key);
+            }
+            workqueue.done(key);
+            return null;
+        });
+    }
+
     /**
      * Compares the actual state with the desired, and attempts to
      * converge the two. It then updates the Status block of the Foo resource
-     * with the current status of the resource.
+     * with the current status of the resource. Blocks until all writes are done.
+     *
+     * @param foo specified resource
+     */
+    protected ReconcileOutcome reconcile(Foo foo) {
+        try {
+            return reconcileAsync(foo).join();
+        } catch (CompletionException completionException) {
+            Throwable cause = unwrap(completionException);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw completionException;
+        }
+    }
+
+    /**
+     * Same as {@link #reconcile(Foo)}, without blocking on the API calls. Each call is chained
+     * onto the completion of the previous one.
      *
      * @param foo specified resource
+     * @return future completing with the outcome once all writes are done
      */
-    protected void reconcile(Foo foo) {
+    CompletableFuture<ReconcileOutcome> reconcileAsync(Foo foo) {
+        return reconcileDeploymentAsync(foo).thenCompose(sync -> updateStatusIfSynced(foo, sync));
+    }
+
+    /**
+     * First half of a reconcile, converges the Deployment but leaves the Foo status alone.
+     *
+     * @param foo specified resource
+     * @return future completing once the Deployment writes are done
+     */
+    private CompletableFuture<DeploymentSync> reconcileDeploymentAsync(Foo foo) {
         String deploymentName = foo.getSpec().getDeploymentName();
         if (deploymentName == null || deploymentName.isEmpty()) {
             // We choose to absorb the error here as the worker would requeue the
             // resource otherwise. Instead, the next time the resource is updated
             // the resource will be queued again.
             logger.warn("No Deployment name specified for Foo {}/{}", foo.getMetadata().getNamespace(), foo.getMetadata().getName());
-            return;
+            return CompletableFuture.completedFuture(DeploymentSync.NOT_SYNCED);
+        }
+
+        // If our previous writes haven't shown up in the informer cache yet, the cache can't
+        // tell us anything we don't already know. The informer event which satisfies the
+        // expectations will enqueue the Foo again.
+        String key = Cache.metaNamespaceKeyFunc(foo);
+        if (!expectations.satisfiedExpectations(key)) {
+            logger.debug("Waiting for Deployment writes of Foo {} to be observed, skipping", key);
+            return CompletableFuture.completedFuture(DeploymentSync.NOT_SYNCED);
         }
 
-        // Get the deployment with the name specified in Foo.spec
-        Deployment deployment = kubernetesClient.apps().deployments().inNamespace(foo.getMetadata().getNamespace()).withName(deploymentName).get();
+        // Get the deployment with the name specified in Foo.spec from the informer cache
+        Deployment deployment = getDeploymentFromCache(foo, deploymentName);
         // If the resource doesn't exist, we'll create it
         if (deployment == null) {
-            createDeployments(foo);
-            return;
+            return createDeployment(foo, key);
+        }
+        return syncDeployment(foo, key, deployment);
+    }
+
+    /**
+     * Second half of a reconcile, updates the Foo status once its Deployment is in sync.
+     */
+    private CompletableFuture<ReconcileOutcome> updateStatusIfSynced(Foo foo, DeploymentSync sync) {
+        if (!sync.isSynced()) {
+            return CompletableFuture.completedFuture(sync.getOutcome());
         }
+        // Finally, we update the status block of the Foo resource to reflect the
+        // current state of the world
+        return updateAvailableReplicasInFooStatus(foo, foo.getSpec().getReplicas())
+                .thenApply(ignored -> sync.getOutcome());
+    }
+
+    private CompletableFuture<DeploymentSync> createDeployment(Foo foo, String key) {
+        expectations.expectCreations(key, 1);
+        return apiClient.createDeployment(createNewDeployment(foo)).handle((created, throwable) -> {
+            if (throwable == null) {
+                // The status is updated once the informer has seen the new Deployment
+                return CompletableFuture.completedFuture(new DeploymentSync(ReconcileOutcome.CREATED, false));
+            }
+            // The create won't ever be observed by the informer
+            expectations.creationObserved(key);
+            Throwable cause = unwrap(throwable);
+            if (!(cause instanceof KubernetesClientException) || ((KubernetesClientException) cause).getCode() != HttpURLConnection.HTTP_CONFLICT) {
+                return SampleController.<DeploymentSync>failedFuture(cause);
+            }
+            // Our cache is known to be stale, the Deployment already exists on the server.
+            // Only now it's worth a live read.
+            String deploymentName = foo.getSpec().getDeploymentName();
+            logger.info("Deployment {} already exists, informer cache is lagging behind", deploymentName);
+            return apiClient.getDeployment(foo.getMetadata().getNamespace(), deploymentName).thenCompose(deployment -> {
+                if (deployment == null) {
+                    return SampleController.<DeploymentSync>failedFuture(cause);
+                }
+                return syncDeployment(foo, key, deployment);
+            });
+        }).thenCompose(Function.identity());
+    }
 
+    private CompletableFuture<DeploymentSync> syncDeployment(Foo foo, String key, Deployment deployment) {
         // If the Deployment is not controlled by this Foo resource, we should log
         // a warning to the event recorder and return error msg.
         if (!isControlledBy(deployment, foo)) {
             logger.warn("Deployment {} is not controlled by Foo {}", deployment.getMetadata().getName(), foo.getMetadata().getName());
-            return;
+            return CompletableFuture.completedFuture(DeploymentSync.NOT_SYNCED);
         }
 
-        // If this number of the replicas on the Foo resource is specified, and the
-        // number does not equal the current desired replicas on the Deployment, we
-        // should update the Deployment resource.
-        if (foo.getSpec().getReplicas() != deployment.getSpec().getReplicas()) {
-            logger.info("Foo {} replicas: {}, Deployment {} replicas: {}", foo.getMetadata().getName(), foo.getSpec().getReplicas(),
-                    deployment.getMetadata().getName(), deployment.getSpec().getReplicas());
-            deployment.getSpec().setReplicas(foo.getSpec().getReplicas());
-            kubernetesClient.apps().deployments()
-                    .inNamespace(foo.getMetadata().getNamespace())
-                    .resource(deployment)
-                    .update();
+        // Compare the desired Deployment with the cached one. The template is compared through
+        // the spec hash annotation, replicas are compared directly. We only write if something
+        // actually drifted, and then only send the fields which need to change.
+        Deployment desiredDeployment = createNewDeployment(foo);
+        boolean templateDrifted = !Objects.equals(getSpecHash(desiredDeployment), getSpecHash(deployment));
+        boolean replicasDrifted = !Objects.equals(desiredDeployment.getSpec().getReplicas(), deployment.getSpec().getReplicas());
+        if (!templateDrifted && !replicasDrifted) {
+            return CompletableFuture.completedFuture(DeploymentSync.IN_SYNC);
         }
+        logger.info("Foo {} replicas: {}, Deployment {} replicas: {}, template drifted: {}", foo.getMetadata().getName(), foo.getSpec().getReplicas(),
+                deployment.getMetadata().getName(), deployment.getSpec().getReplicas(), templateDrifted);
+        expectations.expectUpdates(key, 1);
+        DeploymentSync patched = new DeploymentSync(templateDrifted ? ReconcileOutcome.UPDATED : ReconcileOutcome.SCALED, true);
+        return patchDeployment(deployment, desiredDeployment, templateDrifted).handle((updated, throwable) -> {
+            if (throwable != null) {
+                // The update won't ever be observed by the informer
+                expectations.updateObserved(key);
+                return SampleController.<DeploymentSync>failedFuture(throwable);
+            }
+            return CompletableFuture.completedFuture(patched);
+        }).thenCompose(Function.identity());
+    }
 
-        // Finally, we update the status block of the Foo resource to reflect the
-        // current state of the world
-        updateAvailableReplicasInFooStatus(foo, foo.getSpec().getReplicas());
+    /**
+     * Sends a JSON merge patch with only the fields that drifted. The selector is never part
+     * of the patch since it's immutable.
+     *
+     * @param deployment current Deployment from the informer cache, it's not modified
+     * @param desiredDeployment Deployment as created by {@link #createNewDeployment(Foo)}
+     * @param templateDrifted whether the pod template needs to be rewritten as well
+     */
+    private CompletableFuture<Deployment> patchDeployment(Deployment deployment, Deployment desiredDeployment, boolean templateDrifted) {
+        Map<String, Object> spec = new LinkedHashMap<>();
+        spec.put("replicas", desiredDeployment.getSpec().getReplicas());
+        Map<String, Object> patch = new LinkedHashMap<>();
+        if (templateDrifted) {
+            spec.put("template", desiredDeployment.getSpec().getTemplate());
+            patch.put("metadata", Collections.singletonMap("annotations",
+                    Collections.singletonMap(SPEC_HASH_ANNOTATION, getSpecHash(desiredDeployment))));
+        }
+        patch.put("spec", spec);
+        return apiClient.patchDeployment(deployment.getMetadata().getNamespace(), deployment.getMetadata().getName(), Serialization.asJson(patch));
     }
 
-    private void createDeployments(Foo foo) {
-        Deployment deployment = createNewDeployment(foo);
-        kubernetesClient.apps().deployments().inNamespace(foo.getMetadata().getNamespace()).resource(deployment).create();
+    /**
+     * Looks up the Deployment named in Foo.spec in the informer cache. Deployments owned by the
+     * Foo are found through the owner UID index first, otherwise we fall back to a lookup by name
+     * which might return a Deployment that isn't ours.
+     *
+     * @param foo owner of the Deployment
+     * @param deploymentName name of the Deployment as specified in Foo.spec
+     * @return cached Deployment or null if the cache doesn't know about it
+     */
+    private Deployment getDeploymentFromCache(Foo foo, String deploymentName) {
+        for (Deployment deployment : getDeploymentsOwnedBy(foo)) {
+            if (deploymentName.equals(deployment.getMetadata().getName())) {
+                return deployment;
+            }
+        }
+        return deploymentInformer.getIndexer().getByKey(Cache.namespaceKeyFunc(foo.getMetadata().getNamespace(), deploymentName));
     }
 
-    private void enqueueFoo(Foo foo) {
-        logger.info("enqueueFoo({})", foo.getMetadata().getName());
+    /**
+     * @param foo owner
+     * @return all cached Deployments whose controlling owner is the given Foo
+     */
+    List<Deployment> getDeploymentsOwnedBy(Foo foo) {
+        String uid = foo.getMetadata().getUid();
+        if (uid == null) {
+            return Collections.emptyList();
+        }
+        return deploymentInformer.getIndexer().byIndex(DEPLOYMENT_OWNER_UID_INDEX, uid);
+    }
+
+    void enqueueFoo(Foo foo) {
+        enqueueFoo(foo, Priority.NORMAL);
+    }
+
+    void enqueueFoo(Foo foo, Priority priority) {
         String key = Cache.metaNamespaceKeyFunc(foo);
-        logger.info("Going to enqueue key {}", key);
         if (key != null && !key.isEmpty()) {
-            logger.info("Adding item to workqueue");
-            workqueue.add(key);
+            enqueueKey(key, priority);
         }
     }
 
-    private void handleObject(HasMetadata obj) {
-        logger.info("handleDeploymentObject({})", obj.getMetadata().getName());
-        OwnerReference ownerReference = getControllerOf(obj);
+    /**
+     * Runs for every event which makes it past the predicates. Nothing is logged at info
+     * level per event, only a sample every {@link #LOG_SAMPLE_INTERVAL}.
+     */
+    private void enqueueKey(String key, Priority priority) {
+        if (isResponsibleFor(key)) {
+            logger.debug("Enqueueing Foo {} with priority {}", key, priority);
+            enqueueLog.info("Enqueued Foo {} with priority {}", key, priority);
+            workqueue.add(key, priority);
+        }
+    }
+
+    void handleObject(HasMetadata obj) {
+        handleObject(obj, Priority.NORMAL);
+    }
+
+    void handleObject(HasMetadata obj, Priority priority) {
+        OwnerReference ownerReference = getFooOwnerReference(obj);
         if (ownerReference != null) {
-            if (!ownerReference.getKind().equalsIgnoreCase(Foo.class.getSimpleName())) {
-                return;
-            }
-            Foo foo = fooLister.get(ownerReference.getName());
-            if (foo == null) {
-                logger.info("ignoring orphaned object '{}' of foo '{}'", obj.getMetadata().getSelfLink(), ownerReference.getName());
-                return;
-            }
-            enqueueFoo(foo);
+            enqueueOwner(obj, ownerReference, Cache.namespaceKeyFunc(obj.getMetadata().getNamespace(), ownerReference.getName()), priority);
+        }
+    }
+
+    /**
+     * Enqueues the Foo controlling the object, if it's still around.
+     *
+     * @param ownerKey key of the owning Foo in format namespace/name, which is also its key in
+     *                 the work queue
+     */
+    private void enqueueOwner(HasMetadata obj, OwnerReference ownerReference, String ownerKey, Priority priority) {
+        logger.debug("Handling {} of Foo {}", obj.getMetadata().getName(), ownerKey);
+        Foo foo = fooInformer.getIndexer().getByKey(ownerKey);
+        if (foo == null || !isSameUid(ownerReference, foo)) {
+            orphanLog.info("Ignoring orphaned object '{}' of Foo '{}'", obj.getMetadata().getName(), ownerKey);
+            return;
+        }
+        enqueueKey(ownerKey, priority);
+    }
+
+    /**
+     * Resyncs only catch up, spec changes are what users wait for. Anything else, like a
+     * label change or a status which doesn't match, goes in between.
+     */
+    static Priority getUpdatePriority(Foo oldFoo, Foo newFoo) {
+        if (Objects.equals(oldFoo.getMetadata().getResourceVersion(), newFoo.getMetadata().getResourceVersion())) {
+            return Priority.LOW;
+        }
+        if (!Objects.equals(oldFoo.getSpec(), newFoo.getSpec())) {
+            return Priority.HIGH;
+        }
+        return Priority.NORMAL;
+    }
+
+    /**
+     * @param obj object which might be controlled by a Foo
+     * @return controller reference of the object, null if not controlled by a Foo
+     */
+    private static OwnerReference getFooOwnerReference(HasMetadata obj) {
+        OwnerReference ownerReference = getControllerOf(obj);
+        if (ownerReference == null || !ownerReference.getKind().equalsIgnoreCase(Foo.class.getSimpleName())) {
+            return null;
         }
+        return ownerReference;
     }
 
-    private void updateAvailableReplicasInFooStatus(Foo foo, int replicas) {
+    private CompletableFuture<Foo> updateAvailableReplicasInFooStatus(Foo foo, int replicas) {
+        // Skip the write altogether if the status is already up to date, a steady state
+        // resync shouldn't cause any requests
+        if (foo.getStatus() != null && foo.getStatus().getAvailableReplicas() == replicas) {
+            return CompletableFuture.completedFuture(foo);
+        }
+        // NEVER modify objects from the store. It's a read-only, local cache.
+        // We send a merge patch against the status subresource containing only the new status
+        // instead of a full copy of the Foo.
         FooStatus fooStatus = new FooStatus();
         fooStatus.setAvailableReplicas(replicas);
-        // NEVER modify objects from the store. It's a read-only, local cache.
-        // You can create a copy manually and modify it
-        Foo fooClone = getFooClone(foo);
-        fooClone.setStatus(fooStatus);
-        // If the CustomResourceSubresources feature gate is not enabled,
-        // we must use Update instead of UpdateStatus to update the Status block of the Foo resource.
-        // UpdateStatus will not allow changes to the Spec of the resource,
-        // which is ideal for ensuring nothing other than resource status has been updated.
-        fooClient.inNamespace(foo.getMetadata().getNamespace()).resource(fooClone).updateStatus();
+        return apiClient.patchFooStatus(foo.getMetadata().getNamespace(), foo.getMetadata().getName(),
+                Serialization.asJson(Collections.singletonMap("status", fooStatus)));
+    }
+
+    private static boolean isStatusUpToDate(Foo foo) {
+        return foo.getStatus() != null && foo.getStatus().getAvailableReplicas() == foo.getSpec().getReplicas();
     }
 
     /**
@@ -230,13 +1106,13 @@ public class SampleController {
      * @param foo {@link Foo} resource which will be owner of this Deployment
      * @return Deployment object based on this Foo resource
      */
-    private Deployment createNewDeployment(Foo foo) {
-        return new DeploymentBuilder()
+    Deployment createNewDeployment(Foo foo) {
+        Deployment deployment = new DeploymentBuilder()
                 .withNewMetadata()
                   .withName(foo.getSpec().getDeploymentName())
                   .withNamespace(foo.getMetadata().getNamespace())
                   .withLabels(getDeploymentLabels(foo))
-                  .addNewOwnerReference().withController(true).withKind(foo.getKind()).withApiVersion(foo.getApiVersion()).withName(foo.getMetadata().getName()).endOwnerReference()
+                  .addNewOwnerReference().withController(true).withKind(foo.getKind()).withApiVersion(foo.getApiVersion()).withName(foo.getMetadata().getName()).withUid(foo.getMetadata().getUid()).endOwnerReference()
                 .endMetadata()
                 .withNewSpec()
                   .withReplicas(foo.getSpec().getReplicas())
@@ -254,19 +1130,50 @@ public class SampleController {
                   .endTemplate()
                 .endSpec()
                 .build();
+        deployment.getMetadata().setAnnotations(Collections.singletonMap(SPEC_HASH_ANNOTATION, computeSpecHash(deployment)));
+        return deployment;
     }
 
-    private Map<String, String> getDeploymentLabels(Foo foo) {
-        Map<String, String> labels = new HashMap<>();
+    /**
+     * Hashes everything we manage in the Deployment spec except replicas, which are
+     * compared directly. Storing the hash in an annotation lets us detect drift against
+     * the cached Deployment without a deep comparison of server-defaulted fields.
+     *
+     * @param deployment desired Deployment
+     * @return hex encoded hash of the Deployment spec
+     */
+    static String computeSpecHash(Deployment deployment) {
+        DeploymentSpec specWithoutReplicas = new DeploymentSpecBuilder(deployment.getSpec()).withReplicas(null).build();
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            byte[] digest = messageDigest.digest(Serialization.asJson(specWithoutReplicas).getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder();
+            for (int i = 0; i < 8; i++) {
+                hash.append(String.format("%02x", digest[i]));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException noSuchAlgorithmException) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", noSuchAlgorithmException);
+        }
+    }
+
+    private static String getSpecHash(Deployment deployment) {
+        Map<String, String> annotations = deployment.getMetadata().getAnnotations();
+        return annotations != null ? annotations.get(SPEC_HASH_ANNOTATION) : null;
+    }
+
+    Map<String, String> getDeploymentLabels(Foo foo) {
+        // Sorted, so that the spec hash doesn't depend on map iteration order
+        Map<String, String> labels = new TreeMap<>();
         labels.put("app", "nginx");
-        labels.put("controller", foo.getMetadata().getName());
+        labels.put(CONTROLLER_LABEL, foo.getMetadata().getName());
         return labels;
     }
 
-    private OwnerReference getControllerOf(HasMetadata obj) {
+    static OwnerReference getControllerOf(HasMetadata obj) {
         List<OwnerReference> ownerReferences = obj.getMetadata().getOwnerReferences();
         for (OwnerReference ownerReference : ownerReferences) {
-            if (ownerReference.getController().equals(Boolean.TRUE)) {
+            if (Boolean.TRUE.equals(ownerReference.getController())) {
                 return ownerReference;
             }
         }
@@ -276,20 +1183,79 @@ public class SampleController {
     private boolean isControlledBy(HasMetadata obj, Foo foo) {
         OwnerReference ownerReference = getControllerOf(obj);
         if (ownerReference != null) {
-            return ownerReference.getKind().equals(foo.getKind()) && ownerReference.getName().equals(foo.getMetadata().getName());
+            return ownerReference.getKind().equals(foo.getKind()) && ownerReference.getName().equals(foo.getMetadata().getName())
+                    && isSameUid(ownerReference, foo);
         }
         return false;
     }
 
-    private Foo getFooClone(Foo foo) {
-        Foo cloneFoo = new Foo();
-        FooSpec cloneFooSpec = new FooSpec();
-        cloneFooSpec.setDeploymentName(foo.getSpec().getDeploymentName());
-        cloneFooSpec.setReplicas(foo.getSpec().getReplicas());
+    /**
+     * Owner references created by older versions of this controller don't carry a UID,
+     * those are matched by name only.
+     */
+    private static boolean isSameUid(OwnerReference ownerReference, Foo foo) {
+        return ownerReference.getUid() == null || foo.getMetadata().getUid() == null
+                || ownerReference.getUid().equals(foo.getMetadata().getUid());
+    }
 
-        cloneFoo.setSpec(cloneFooSpec);
-        cloneFoo.setMetadata(foo.getMetadata());
+    private static List<String> controllerUidIndexFunc(Deployment deployment) {
+        OwnerReference ownerReference = getControllerOf(deployment);
+        if (ownerReference == null || ownerReference.getUid() == null
+                || !ownerReference.getKind().equalsIgnoreCase(Foo.class.getSimpleName())) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(ownerReference.getUid());
+    }
+
+    /**
+     * Outcome of the Deployment half of a reconcile, see {@link #reconcileDeploymentAsync(Foo)}.
+     */
+    private static final class DeploymentSync {
+        static final DeploymentSync NOT_SYNCED = new DeploymentSync(ReconcileOutcome.NO_OP, false);
+        static final DeploymentSync IN_SYNC = new DeploymentSync(ReconcileOutcome.NO_OP, true);
+
+        private final ReconcileOutcome outcome;
+        private final boolean synced;
+
+        DeploymentSync(ReconcileOutcome outcome, boolean synced) {
+            this.outcome = outcome;
+            this.synced = synced;
+        }
+
+        ReconcileOutcome getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * @return whether the Deployment matches the Foo, so that the Foo status can be updated
+         */
+        boolean isSynced() {
+            return synced;
+        }
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+    }
 
-        return cloneFoo;
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor() reflectively, so that
+     * we can keep targeting Java 8 while making use of virtual threads on JDK 21+.
+     *
+     * @return virtual thread executor, or null if the running JDK doesn't support them
+     */
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException exception) {
+            logger.warn("Virtual threads are not supported by this JDK ({}), falling back to platform worker threads", System.getProperty("java.version"));
+            return null;
+        }
     }
 }
@@ -0,0 +1,90 @@
+package io.fabric8.samplecontroller.election;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderCallbacks;
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderElectionConfigBuilder;
+import io.fabric8.kubernetes.client.extended.leaderelection.LeaderElector;
+import io.fabric8.kubernetes.client.extended.leaderelection.resourcelock.LeaseLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Lease based leader election for replicas which stay warm while they aren't leading. Unlike
+ * a plain {@link LeaderElector}, which is done once leadership is lost, a replica which loses
+ * the lease goes back to being a candidate, so that it can take over again later.
+ * <p>
+ * Leadership changes are reported to a callback, typically
+ * {@code SampleController#setLeading(boolean)}. The lease is released on {@link #close()}, so
+ * that a standby takes over within one retry period instead of waiting for the lease to
+ * expire.
+ */
+public class HotStandbyElection implements AutoCloseable {
+    public static final Logger logger = LoggerFactory.getLogger(HotStandbyElection.class.getSimpleName());
+
+    private final LeaderElector leaderElector;
+    private final String identity;
+    private volatile CompletableFuture<?> election;
+    private volatile boolean closed;
+
+    /**
+     * @param namespace namespace of the Lease
+     * @param leaseName name of the Lease shared by all replicas
+     * @param identity unique name of this replica, e.g. the pod name
+     * @param leaseDuration time a standby waits for a leader which stopped renewing before taking
+     *                      over, the leader gives up leading if it can't renew for 2/3 of it
+     * @param onLeadershipChange called with true when this replica starts leading and with
+     *                           false when it stops
+     */
+    public HotStandbyElection(KubernetesClient client, String namespace, String leaseName, String identity, Duration leaseDuration,
+                              Consumer<Boolean> onLeadershipChange) {
+        this.identity = identity;
+        this.leaderElector = client.leaderElector()
+                .withConfig(new LeaderElectionConfigBuilder()
+                        .withName(leaseName)
+                        .withLock(new LeaseLock(namespace, leaseName, identity))
+                        .withLeaseDuration(leaseDuration)
+                        .withRenewDeadline(leaseDuration.multipliedBy(2).dividedBy(3))
+                        .withRetryPeriod(leaseDuration.dividedBy(7))
+                        .withReleaseOnCancel(true)
+                        .withLeaderCallbacks(new LeaderCallbacks(
+                                () -> onLeadershipChange.accept(true),
+                                () -> onLeadershipChange.accept(false),
+                                newLeader -> logger.info("{} is leading now", newLeader)))
+                        .build())
+                .build();
+    }
+
+    /**
+     * Enters the election without blocking.
+     */
+    public synchronized void start() {
+        if (closed) {
+            return;
+        }
+        logger.info("{} is standing for election", identity);
+        election = leaderElector.start();
+        election.whenComplete((ignored, throwable) -> {
+            if (!closed) {
+                if (throwable != null) {
+                    logger.warn("Leader election of {} failed, standing again", identity, throwable);
+                }
+                start();
+            }
+        });
+    }
+
+    /**
+     * Leaves the election, releasing the lease if we hold it.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (election != null) {
+            election.cancel(true);
+        }
+    }
+}
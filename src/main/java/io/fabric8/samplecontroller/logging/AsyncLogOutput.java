@@ -0,0 +1,166 @@
+package io.fabric8.samplecontroller.logging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous, bounded log output. Logging threads only copy complete lines into a queue,
+ * a single background thread writes them to the actual output. Once the queue is full, lines
+ * are dropped and counted instead of blocking, so that a slow or stalled console can never
+ * hold up informer or worker threads. The number of dropped lines is written as soon as the
+ * queue has drained again.
+ * <p>
+ * slf4j-simple looks up {@link System#err} on every message, {@link #installOnStandardError(int)}
+ * therefore turns it into an asynchronous backend.
+ */
+public class AsyncLogOutput extends OutputStream {
+    private static final byte[] POISON = new byte[0];
+
+    private final OutputStream target;
+    private final BlockingQueue<byte[]> lines;
+    private final LongAdder dropped = new LongAdder();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream(256);
+    private final Thread writer;
+    private PrintStream replacedStandardError;
+    private boolean closed;
+
+    /**
+     * @param target output the lines end up in, only ever written by the background thread
+     * @param capacity number of lines which may be queued before lines are dropped
+     */
+    public AsyncLogOutput(OutputStream target, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1, got " + capacity);
+        }
+        this.target = target;
+        this.lines = new ArrayBlockingQueue<>(capacity);
+        this.writer = new Thread(this::writeLines, "async-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Replaces {@link System#err} with an asynchronous stream writing to the current one.
+     * {@link #close()} puts the original stream back.
+     *
+     * @param capacity number of lines which may be queued before lines are dropped
+     */
+    public static AsyncLogOutput installOnStandardError(int capacity) {
+        PrintStream standardError = System.err;
+        AsyncLogOutput output = new AsyncLogOutput(standardError, capacity);
+        output.replacedStandardError = standardError;
+        System.setErr(new PrintStream(output, false));
+        return output;
+    }
+
+    @Override
+    public synchronized void write(int b) {
+        pending.write(b);
+        if (b == '\n') {
+            enqueuePending();
+        }
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) {
+        int start = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == '\n') {
+                pending.write(bytes, start, i + 1 - start);
+                enqueuePending();
+                start = i + 1;
+            }
+        }
+        pending.write(bytes, start, end - start);
+    }
+
+    /**
+     * Lines are flushed by the background thread, flushing never blocks the caller.
+     */
+    @Override
+    public void flush() {
+        // Nothing to do
+    }
+
+    /**
+     * @return lines dropped so far because the queue was full
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes whatever is still queued, including an incomplete last line, and stops the
+     * background thread. Waits at most a few seconds for a stalled output.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (pending.size() > 0) {
+                enqueuePending();
+            }
+            closed = true;
+            if (replacedStandardError != null) {
+                System.setErr(replacedStandardError);
+            }
+        }
+        try {
+            if (lines.offer(POISON, 5, TimeUnit.SECONDS)) {
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueuePending() {
+        if (closed || !lines.offer(pending.toByteArray())) {
+            dropped.increment();
+        }
+        pending.reset();
+    }
+
+    private void writeLines() {
+        List<byte[]> batch = new ArrayList<>();
+        long reportedDropped = 0;
+        boolean closing = false;
+        try {
+            while (!closing) {
+                batch.add(lines.take());
+                lines.drainTo(batch);
+                for (byte[] line : batch) {
+                    if (line == POISON) {
+                        closing = true;
+                        break;
+                    }
+                    target.write(line);
+                }
+                batch.clear();
+                long droppedSoFar = dropped.sum();
+                if (droppedSoFar > reportedDropped) {
+                    target.write(String.format("%d log lines dropped, the log output couldn't keep up%n", droppedSoFar - reportedDropped)
+                            .getBytes(StandardCharsets.UTF_8));
+                    reportedDropped = droppedSoFar;
+                }
+                target.flush();
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ioException) {
+            // Nowhere left to report this, the output is gone
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.fabric8.samplecontroller.logging;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Logs at most one message per interval and counts the ones in between, for messages which
+ * would otherwise show up once per informer event. During an event storm the log gets one
+ * line with an example and the number of similar messages, instead of thousands of lines.
+ * Suppressed messages are neither formatted nor written, they cost a clock read and a
+ * counter increment.
+ */
+public class SampledLogger {
+    private static final String SUPPRESSED_SUFFIX = " ({} similar messages suppressed)";
+
+    private final Logger logger;
+    private final long intervalNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong nextLogNanos;
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * @param logger logger to write the sampled messages to
+     * @param interval minimum time between two messages
+     */
+    public SampledLogger(Logger logger, Duration interval) {
+        this(logger, interval, System::nanoTime);
+    }
+
+    SampledLogger(Logger logger, Duration interval, LongSupplier nanoClock) {
+        this.logger = logger;
+        this.intervalNanos = interval.toNanos();
+        this.nanoClock = nanoClock;
+        // The first message is always logged
+        this.nextLogNanos = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    public void info(String format, Object arg) {
+        if (sample()) {
+            long count = suppressed.sumThenReset();
+            if (count > 0) {
+                logger.info(format + SUPPRESSED_SUFFIX, arg, count);
+            } else {
+                logger.info(format, arg);
+            }
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        if (sample()) {
+            long count = suppressed.sumThenReset();
+            if (count > 0) {
+                logger.info(format + SUPPRESSED_SUFFIX, arg1, arg2, count);
+            } else {
+                logger.info(format, arg1, arg2);
+            }
+        }
+    }
+
+    /**
+     * @return whether a message may be logged now, otherwise it's counted as suppressed. Only
+     * one of several threads racing for the same interval gets true.
+     */
+    boolean sample() {
+        long now = nanoClock.getAsLong();
+        long next = nextLogNanos.get();
+        if (now - next >= 0 && nextLogNanos.compareAndSet(next, now + intervalNanos)) {
+            return true;
+        }
+        suppressed.increment();
+        return false;
+    }
+
+    long getSuppressed() {
+        return suppressed.sum();
+    }
+}
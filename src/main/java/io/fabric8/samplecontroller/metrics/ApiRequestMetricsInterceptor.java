@@ -0,0 +1,101 @@
+package io.fabric8.samplecontroller.metrics;
+
+import io.fabric8.kubernetes.client.http.AsyncBody;
+import io.fabric8.kubernetes.client.http.HttpRequest;
+import io.fabric8.kubernetes.client.http.HttpResponse;
+import io.fabric8.kubernetes.client.http.Interceptor;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * HTTP interceptor which counts every request the Kubernetes client sends by verb,
+ * resource and response code. Register it through
+ * {@code KubernetesClientBuilder#withHttpClientBuilderConsumer}.
+ */
+public class ApiRequestMetricsInterceptor implements Interceptor {
+    public static final String NAME = "samplecontroller-metrics";
+
+    private final ControllerMetrics metrics;
+
+    public ApiRequestMetricsInterceptor(ControllerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void after(HttpRequest request, HttpResponse<?> response, AsyncBody.Consumer<List<ByteBuffer>> consumer) {
+        metrics.apiRequest(getVerb(request), getResource(request), response.code());
+    }
+
+    @Override
+    public void afterConnectionFailure(HttpRequest request, Throwable failure) {
+        metrics.apiRequest(getVerb(request), getResource(request), 0);
+    }
+
+    /**
+     * Maps the HTTP method onto the Kubernetes API verb, e.g. a GET without a name is a list.
+     */
+    static String getVerb(HttpRequest request) {
+        String method = request.method();
+        switch (method) {
+            case "GET":
+                String query = request.uri().getRawQuery();
+                if (query != null && query.contains("watch=true")) {
+                    return "watch";
+                }
+                return getName(request) == null ? "list" : "get";
+            case "POST":
+                return "create";
+            case "PUT":
+                return "update";
+            case "PATCH":
+                return "patch";
+            case "DELETE":
+                return "delete";
+            default:
+                return method.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * @return resource of a request path like /api/v1/namespaces/ns/pods/name or
+     * /apis/group/version/namespaces/ns/resource/name/subresource, including the subresource
+     */
+    static String getResource(HttpRequest request) {
+        String[] segments = getResourceSegments(request);
+        if (segments.length == 0) {
+            return "unknown";
+        }
+        return segments.length > 2 ? segments[0] + "/" + segments[2] : segments[0];
+    }
+
+    private static String getName(HttpRequest request) {
+        String[] segments = getResourceSegments(request);
+        return segments.length > 1 ? segments[1] : null;
+    }
+
+    private static String[] getResourceSegments(HttpRequest request) {
+        String path = request.uri().getPath();
+        String[] segments = path.startsWith("/") ? path.substring(1).split("/") : path.split("/");
+        // Skip /api/{version} or /apis/{group}/{version}
+        int start;
+        if (segments.length > 0 && "api".equals(segments[0])) {
+            start = 2;
+        } else if (segments.length > 0 && "apis".equals(segments[0])) {
+            start = 3;
+        } else {
+            return new String[0];
+        }
+        // Skip namespaces/{namespace} unless namespaces themselves are requested
+        if (segments.length > start + 2 && "namespaces".equals(segments[start])) {
+            start += 2;
+        }
+        if (start >= segments.length) {
+            return new String[0];
+        }
+        String[] resourceSegments = new String[segments.length - start];
+        System.arraycopy(segments, start, resourceSegments, 0, resourceSegments.length);
+        return resourceSegments;
+    }
+}
@@ -0,0 +1,205 @@
+package io.fabric8.samplecontroller.metrics;
+
+import io.fabric8.samplecontroller.workqueue.Priority;
+import io.fabric8.samplecontroller.workqueue.WorkQueueMetrics;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+/**
+ * All metrics exported by the sample controller. Children with a fixed set of label values
+ * are resolved upfront so that recording them doesn't allocate.
+ */
+public class ControllerMetrics implements WorkQueueMetrics {
+    private static final double[] QUEUE_DURATION_BUCKETS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 60, 300};
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Outcome of a single reconcile, used as label of the reconcile duration histogram.
+     */
+    public enum ReconcileOutcome {
+        CREATED, SCALED, UPDATED, NO_OP, ERROR;
+
+        private final String label = name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    private final MetricsRegistry registry;
+    private final Gauge workQueueDepth;
+    private final Counter.Child workQueueAdds;
+    private final Counter.Child workQueueRetries;
+    private final Histogram.Child workQueueDuration;
+    private final Map<Priority, Histogram.Child> workQueueDurationsByPriority = new EnumMap<>(Priority.class);
+    private final Map<ReconcileOutcome, Histogram.Child> reconcileDurations = new EnumMap<>(ReconcileOutcome.class);
+    private final Counter apiRequests;
+    private final Counter informerEvents;
+    private final Counter informerEventsDropped;
+    private final Gauge informerSyncDuration;
+    private final Gauge firstReconcileDuration;
+    private final Gauge writeRateLimit;
+    private final Counter.Child writesThrottled;
+    private final Gauge leader;
+
+    public ControllerMetrics() {
+        this(new MetricsRegistry());
+    }
+
+    public ControllerMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+        this.workQueueDepth = registry.gauge("samplecontroller_workqueue_depth", "Number of keys waiting in the work queue");
+        this.workQueueAdds = registry.counter("samplecontroller_workqueue_adds_total", "Number of keys added to the work queue, including duplicates").labels();
+        this.workQueueRetries = registry.counter("samplecontroller_workqueue_retries_total", "Number of keys requeued after a failed reconcile").labels();
+        this.workQueueDuration = registry.histogram("samplecontroller_workqueue_queue_duration_seconds",
+                "Time a key spends in the work queue before being picked up by a worker", QUEUE_DURATION_BUCKETS).labels();
+        Histogram workQueueDurationByPriority = registry.histogram("samplecontroller_workqueue_priority_queue_duration_seconds",
+                "Time a key spends in the work queue before being picked up by a worker by priority", QUEUE_DURATION_BUCKETS, "priority");
+        for (Priority priority : Priority.values()) {
+            workQueueDurationsByPriority.put(priority, workQueueDurationByPriority.labels(priority.getLabel()));
+        }
+        Histogram reconcileDuration = registry.histogram("samplecontroller_reconcile_duration_seconds",
+                "Duration of a single reconcile by outcome", Histogram.DEFAULT_BUCKETS, "outcome");
+        for (ReconcileOutcome outcome : ReconcileOutcome.values()) {
+            reconcileDurations.put(outcome, reconcileDuration.labels(outcome.label));
+        }
+        this.apiRequests = registry.counter("samplecontroller_api_requests_total",
+                "Requests sent to the Kubernetes API server by verb, resource and status code", "verb", "resource", "code");
+        this.informerEvents = registry.counter("samplecontroller_informer_events_total",
+                "Events received from informers by resource and event type", "resource", "event");
+        this.informerEventsDropped = registry.counter("samplecontroller_informer_events_dropped_total",
+                "Informer events filtered out before reaching the work queue by resource and event type", "resource", "event");
+        this.informerSyncDuration = registry.gauge("samplecontroller_informer_sync_duration_seconds",
+                "Time it took until all informer caches had synced");
+        this.firstReconcileDuration = registry.gauge("samplecontroller_first_reconcile_duration_seconds",
+                "Time it took until the first reconcile had completed");
+        this.writeRateLimit = registry.gauge("samplecontroller_write_rate_limit_qps",
+                "Current rate limit of writes sent to the Kubernetes API server, in requests per second");
+        this.writesThrottled = registry.counter("samplecontroller_writes_throttled_total",
+                "Writes rejected by the Kubernetes API server with 429 or 5xx, each lowers the write rate limit").labels();
+        this.leader = registry.gauge("samplecontroller_leader", "1 if this replica is reconciling, 0 while it's a hot standby");
+    }
+
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    public void setWorkQueueDepthFunction(DoubleSupplier depth) {
+        workQueueDepth.setFunction(depth);
+    }
+
+    @Override
+    public void added() {
+        workQueueAdds.inc();
+    }
+
+    @Override
+    public void dequeued(long queuedNanos) {
+        workQueueDuration.observe(queuedNanos / NANOS_PER_SECOND);
+    }
+
+    @Override
+    public void dequeued(Priority priority, long queuedNanos) {
+        dequeued(queuedNanos);
+        workQueueDurationsByPriority.get(priority).observe(queuedNanos / NANOS_PER_SECOND);
+    }
+
+    @Override
+    public void retried() {
+        workQueueRetries.inc();
+    }
+
+    /**
+     * @param outcome what the reconcile did
+     * @param startNanos value of {@link System#nanoTime()} when the reconcile started
+     */
+    public void reconciled(ReconcileOutcome outcome, long startNanos) {
+        reconcileDurations.get(outcome).observeSince(startNanos);
+    }
+
+    public Counter.Child informerEvents(String resource, String event) {
+        return informerEvents.labels(resource, event);
+    }
+
+    public Counter.Child informerEventsDropped(String resource, String event) {
+        return informerEventsDropped.labels(resource, event);
+    }
+
+    public void apiRequest(String verb, String resource, int code) {
+        apiRequests.labels(verb, resource, Integer.toString(code)).inc();
+    }
+
+    public void setWriteRateLimitFunction(DoubleSupplier rate) {
+        writeRateLimit.setFunction(rate);
+    }
+
+    public void writeThrottled() {
+        writesThrottled.inc();
+    }
+
+    public void leading(boolean leading) {
+        leader.set(leading ? 1 : 0);
+    }
+
+    public void informersSynced(long syncNanos) {
+        informerSyncDuration.set(syncNanos / NANOS_PER_SECOND);
+    }
+
+    /**
+     * @return seconds from start until the informer caches had synced, 0 if they haven't yet
+     */
+    public double getInformerSyncDuration() {
+        return informerSyncDuration.labels().get();
+    }
+
+    public void firstReconcileCompleted(long startupNanos) {
+        firstReconcileDuration.set(startupNanos / NANOS_PER_SECOND);
+    }
+
+    /**
+     * @return seconds from start until the first reconcile had completed, 0 if none has yet
+     */
+    public double getFirstReconcileDuration() {
+        return firstReconcileDuration.labels().get();
+    }
+
+    /**
+     * @return number of requests sent to the API server so far, across all verbs, resources and codes
+     */
+    public long getApiRequestCount() {
+        double count = 0;
+        for (Counter.Child child : apiRequests.getChildren().values()) {
+            count += child.get();
+        }
+        return (long) count;
+    }
+
+    /**
+     * @return requests sent to the API server so far by verb and resource, e.g. "patch deployments",
+     * across all codes
+     */
+    public Map<String, Long> getApiRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<List<String>, Counter.Child> child : apiRequests.getChildren().entrySet()) {
+            String verbAndResource = child.getKey().get(0) + " " + child.getKey().get(1);
+            counts.merge(verbAndResource, (long) child.getValue().get(), Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * @return number of keys currently waiting in the work queue
+     */
+    public double getWorkQueueDepth() {
+        return workQueueDepth.labels().get();
+    }
+
+    /**
+     * @return counts of reconciles with the given outcome so far
+     */
+    public long getReconcileCount(ReconcileOutcome outcome) {
+        return reconcileDurations.get(outcome).getCount();
+    }
+}
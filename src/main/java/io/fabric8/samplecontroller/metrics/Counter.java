@@ -0,0 +1,51 @@
+package io.fabric8.samplecontroller.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * A monotonically increasing value.
+ */
+public class Counter extends Metric<Counter.Child> {
+
+    Counter(String name, String help, String[] labelNames) {
+        super(name, help, labelNames);
+    }
+
+    public void inc() {
+        labels().inc();
+    }
+
+    @Override
+    String getType() {
+        return "counter";
+    }
+
+    @Override
+    Child newChild() {
+        return new Child();
+    }
+
+    @Override
+    void renderChild(StringBuilder output, String labels, Child child) {
+        output.append(getName()).append(labels).append(' ').append(formatValue(child.get())).append('\n');
+    }
+
+    public static class Child {
+        private final DoubleAdder value = new DoubleAdder();
+
+        public void inc() {
+            value.add(1);
+        }
+
+        public void inc(double amount) {
+            if (amount < 0) {
+                throw new IllegalArgumentException("Counters can only be incremented, got " + amount);
+            }
+            value.add(amount);
+        }
+
+        public double get() {
+            return value.sum();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.fabric8.samplecontroller.metrics;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * A value which can go up and down. It can either be set explicitly or be backed by a
+ * callback which is evaluated whenever the metrics are scraped.
+ */
+public class Gauge extends Metric<Gauge.Child> {
+
+    Gauge(String name, String help, String[] labelNames) {
+        super(name, help, labelNames);
+    }
+
+    public void set(double value) {
+        labels().set(value);
+    }
+
+    public void setFunction(DoubleSupplier function) {
+        labels().setFunction(function);
+    }
+
+    @Override
+    String getType() {
+        return "gauge";
+    }
+
+    @Override
+    Child newChild() {
+        return new Child();
+    }
+
+    @Override
+    void renderChild(StringBuilder output, String labels, Child child) {
+        output.append(getName()).append(labels).append(' ').append(formatValue(child.get())).append('\n');
+    }
+
+    public static class Child {
+        private volatile double value;
+        private volatile DoubleSupplier function;
+
+        public void set(double value) {
+            this.value = value;
+        }
+
+        public void setFunction(DoubleSupplier function) {
+            this.function = function;
+        }
+
+        public double get() {
+            DoubleSupplier currentFunction = function;
+            return currentFunction != null ? currentFunction.getAsDouble() : value;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package io.fabric8.samplecontroller.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples observations (usually durations in seconds) into cumulative buckets.
+ */
+public class Histogram extends Metric<Histogram.Child> {
+    /**
+     * Same defaults as the Prometheus client libraries, from 5ms up to 10s.
+     */
+    public static final double[] DEFAULT_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final double[] buckets;
+
+    Histogram(String name, String help, double[] buckets, String[] labelNames) {
+        super(name, help, labelNames);
+        this.buckets = Arrays.copyOf(buckets, buckets.length);
+        Arrays.sort(this.buckets);
+    }
+
+    public void observe(double value) {
+        labels().observe(value);
+    }
+
+    @Override
+    String getType() {
+        return "histogram";
+    }
+
+    @Override
+    Child newChild() {
+        return new Child(buckets);
+    }
+
+    @Override
+    void render(StringBuilder output) {
+        for (Map.Entry<List<String>, Child> entry : getChildren().entrySet()) {
+            Child child = entry.getValue();
+            long cumulativeCount = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulativeCount += child.bucketCounts[i].sum();
+                output.append(getName()).append("_bucket").append(formatLabels(entry.getKey(), "le", formatValue(buckets[i])))
+                        .append(' ').append(cumulativeCount).append('\n');
+            }
+            long count = child.count.sum();
+            output.append(getName()).append("_bucket").append(formatLabels(entry.getKey(), "le", "+Inf"))
+                    .append(' ').append(count).append('\n');
+            String labels = formatLabels(entry.getKey(), null, null);
+            output.append(getName()).append("_sum").append(labels).append(' ').append(formatValue(child.sum.sum())).append('\n');
+            output.append(getName()).append("_count").append(labels).append(' ').append(count).append('\n');
+        }
+    }
+
+    @Override
+    void renderChild(StringBuilder output, String labels, Child child) {
+        // Histograms render all their series in render()
+    }
+
+    public static class Child {
+        private final double[] buckets;
+        private final LongAdder[] bucketCounts;
+        private final DoubleAdder sum = new DoubleAdder();
+        private final LongAdder count = new LongAdder();
+
+        Child(double[] buckets) {
+            this.buckets = buckets;
+            this.bucketCounts = new LongAdder[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                bucketCounts[i] = new LongAdder();
+            }
+        }
+
+        public void observe(double value) {
+            for (int i = 0; i < buckets.length; i++) {
+                if (value <= buckets[i]) {
+                    bucketCounts[i].increment();
+                    break;
+                }
+            }
+            sum.add(value);
+            count.increment();
+        }
+
+        /**
+         * @param startNanos value of {@link System#nanoTime()} when the measured operation started
+         */
+        public void observeSince(long startNanos) {
+            observe((System.nanoTime() - startNanos) / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+    }
+}
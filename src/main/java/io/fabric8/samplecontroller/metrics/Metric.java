@@ -0,0 +1,95 @@
+package io.fabric8.samplecontroller.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Base class of all metrics. Every distinct combination of label values gets its own
+ * child, callers on a hot path should look up the child once via {@link #labels(String...)}
+ * and keep a reference to it.
+ *
+ * @param <C> type of the child holding the actual values
+ */
+public abstract class Metric<C> {
+    private final String name;
+    private final String help;
+    private final String[] labelNames;
+    private final Map<List<String>, C> children = new ConcurrentHashMap<>();
+
+    Metric(String name, String help, String[] labelNames) {
+        this.name = name;
+        this.help = help;
+        this.labelNames = labelNames;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    abstract String getType();
+
+    abstract C newChild();
+
+    abstract void renderChild(StringBuilder output, String labels, C child);
+
+    /**
+     * @param labelValues values for the label names given at registration, in the same order
+     * @return child for the given label values
+     */
+    public C labels(String... labelValues) {
+        if (labelValues.length != labelNames.length) {
+            throw new IllegalArgumentException("Metric " + name + " expects labels " + Arrays.toString(labelNames));
+        }
+        return children.computeIfAbsent(Arrays.asList(labelValues), key -> newChild());
+    }
+
+    void render(StringBuilder output) {
+        for (Map.Entry<List<String>, C> entry : children.entrySet()) {
+            renderChild(output, formatLabels(entry.getKey(), null, null), entry.getValue());
+        }
+    }
+
+    String formatLabels(List<String> labelValues, String extraName, String extraValue) {
+        if (labelValues.isEmpty() && extraName == null) {
+            return "";
+        }
+        StringBuilder labels = new StringBuilder("{");
+        for (int i = 0; i < labelValues.size(); i++) {
+            if (i > 0) {
+                labels.append(',');
+            }
+            labels.append(labelNames[i]).append("=\"").append(escape(labelValues.get(i))).append('"');
+        }
+        if (extraName != null) {
+            if (!labelValues.isEmpty()) {
+                labels.append(',');
+            }
+            labels.append(extraName).append("=\"").append(extraValue).append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    Map<List<String>, C> getChildren() {
+        return children;
+    }
+
+    static String formatValue(double value) {
+        if (value == Double.POSITIVE_INFINITY) {
+            return "+Inf";
+        }
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,48 @@
+package io.fabric8.samplecontroller.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A minimal, dependency free registry of metrics which can be rendered in the
+ * Prometheus text exposition format (version 0.0.4).
+ */
+public class MetricsRegistry {
+    private final List<Metric<?>> metrics = new CopyOnWriteArrayList<>();
+
+    public Counter counter(String name, String help, String... labelNames) {
+        return register(new Counter(name, help, labelNames));
+    }
+
+    public Gauge gauge(String name, String help, String... labelNames) {
+        return register(new Gauge(name, help, labelNames));
+    }
+
+    public Histogram histogram(String name, String help, double[] buckets, String... labelNames) {
+        return register(new Histogram(name, help, buckets, labelNames));
+    }
+
+    /**
+     * @return all registered metrics in Prometheus text format
+     */
+    public String render() {
+        StringBuilder output = new StringBuilder();
+        for (Metric<?> metric : new ArrayList<>(metrics)) {
+            output.append("# HELP ").append(metric.getName()).append(' ').append(metric.getHelp()).append('\n');
+            output.append("# TYPE ").append(metric.getName()).append(' ').append(metric.getType()).append('\n');
+            metric.render(output);
+        }
+        return output.toString();
+    }
+
+    private <M extends Metric<?>> M register(M metric) {
+        for (Metric<?> existing : metrics) {
+            if (existing.getName().equals(metric.getName())) {
+                throw new IllegalArgumentException("Metric " + metric.getName() + " is already registered");
+            }
+        }
+        metrics.add(metric);
+        return metric;
+    }
+}
@@ -0,0 +1,64 @@
+package io.fabric8.samplecontroller.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Serves the contents of a {@link MetricsRegistry} on /metrics using the HTTP server
+ * which ships with the JDK, along with a readiness probe on /readyz.
+ */
+public class MetricsServer implements AutoCloseable {
+    public static final Logger logger = LoggerFactory.getLogger(MetricsServer.class.getSimpleName());
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer httpServer;
+    private volatile BooleanSupplier readinessCheck = () -> true;
+
+    public MetricsServer(MetricsRegistry registry, int port) throws IOException {
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        this.httpServer.createContext("/metrics", exchange -> respond(exchange, 200, registry.render()));
+        this.httpServer.createContext("/readyz", exchange -> {
+            boolean ready = readinessCheck.getAsBoolean();
+            respond(exchange, ready ? 200 : 503, ready ? "ok\n" : "not ready\n");
+        });
+        this.httpServer.setExecutor(null);
+    }
+
+    public void start() {
+        httpServer.start();
+        logger.info("Serving metrics on http://localhost:{}/metrics", getPort());
+    }
+
+    /**
+     * @param readinessCheck decides whether /readyz answers with 200 or 503, ready by default
+     */
+    public void setReadinessCheck(BooleanSupplier readinessCheck) {
+        this.readinessCheck = readinessCheck;
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
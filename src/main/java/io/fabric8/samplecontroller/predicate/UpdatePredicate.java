@@ -0,0 +1,109 @@
+package io.fabric8.samplecontroller.predicate;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Decides whether an informer update event is worth a reconcile. Predicates are combined
+ * with {@link #or(UpdatePredicate)} and {@link #and(UpdatePredicate)} into a pipeline in
+ * front of the work queue, e.g.
+ * <pre>
+ * UpdatePredicate.&lt;Deployment&gt;generationChanged().or(UpdatePredicate.labelsChanged())
+ * </pre>
+ * Old objects come from the informer cache, so a predicate must only look at fields which
+ * survive the cache transform in use, see {@link io.fabric8.samplecontroller.cache.CacheTransforms}.
+ *
+ * @param <T> type of the watched resource
+ */
+@FunctionalInterface
+public interface UpdatePredicate<T extends HasMetadata> {
+
+    /**
+     * @param oldObject object before the update
+     * @param newObject object after the update
+     * @return true if the update should be passed on
+     */
+    boolean test(T oldObject, T newObject);
+
+    default UpdatePredicate<T> or(UpdatePredicate<T> other) {
+        return (oldObject, newObject) -> test(oldObject, newObject) || other.test(oldObject, newObject);
+    }
+
+    default UpdatePredicate<T> and(UpdatePredicate<T> other) {
+        return (oldObject, newObject) -> test(oldObject, newObject) && other.test(oldObject, newObject);
+    }
+
+    default UpdatePredicate<T> negate() {
+        return (oldObject, newObject) -> !test(oldObject, newObject);
+    }
+
+    /**
+     * @return predicate matching periodic resyncs, which carry the same resource version twice
+     */
+    static <T extends HasMetadata> UpdatePredicate<T> resync() {
+        return (oldObject, newObject) -> Objects.equals(oldObject.getMetadata().getResourceVersion(), newObject.getMetadata().getResourceVersion());
+    }
+
+    /**
+     * metadata.generation is only bumped by spec changes, status updates leave it alone.
+     * Objects without a generation are always considered changed.
+     *
+     * @return predicate matching spec changes
+     */
+    static <T extends HasMetadata> UpdatePredicate<T> generationChanged() {
+        return (oldObject, newObject) -> {
+            Long oldGeneration = oldObject.getMetadata().getGeneration();
+            Long newGeneration = newObject.getMetadata().getGeneration();
+            return oldGeneration == null || newGeneration == null || !oldGeneration.equals(newGeneration);
+        };
+    }
+
+    /**
+     * @return predicate matching label changes, a missing label map equals an empty one
+     */
+    static <T extends HasMetadata> UpdatePredicate<T> labelsChanged() {
+        return fieldChanged(object -> {
+            Map<String, String> labels = object.getMetadata().getLabels();
+            return labels != null ? labels : Collections.<String, String>emptyMap();
+        });
+    }
+
+    static <T extends HasMetadata> UpdatePredicate<T> ownerReferencesChanged() {
+        return fieldChanged(object -> object.getMetadata().getOwnerReferences());
+    }
+
+    /**
+     * @param key annotation key
+     * @return predicate matching updates which add, remove or change the annotation
+     */
+    static <T extends HasMetadata> UpdatePredicate<T> annotationChanged(String key) {
+        return fieldChanged(object -> {
+            Map<String, String> annotations = object.getMetadata().getAnnotations();
+            return annotations != null ? annotations.get(key) : null;
+        });
+    }
+
+    /**
+     * Compares a single field, like the spec or a status field the controller acts on.
+     * The extractor has to cope with missing parents, e.g. a null status.
+     *
+     * @param field extracts the field to compare, compared with {@link Objects#equals(Object, Object)}
+     * @return predicate matching updates which change the field
+     */
+    static <T extends HasMetadata, F> UpdatePredicate<T> fieldChanged(Function<T, F> field) {
+        return (oldObject, newObject) -> !Objects.equals(field.apply(oldObject), field.apply(newObject));
+    }
+
+    /**
+     * @param predicate condition on the updated object alone
+     * @return predicate matching updates whose new object satisfies the condition
+     */
+    static <T extends HasMetadata> UpdatePredicate<T> newObject(Predicate<T> predicate) {
+        return (oldObject, newObject) -> predicate.test(newObject);
+    }
+}
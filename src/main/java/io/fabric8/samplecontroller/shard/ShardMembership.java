@@ -0,0 +1,211 @@
+package io.fabric8.samplecontroller.shard;
+
+import io.fabric8.kubernetes.api.model.coordination.v1.Lease;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.base.PatchContext;
+import io.fabric8.kubernetes.client.dsl.base.PatchType;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.HttpURLConnection;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Tracks the replicas of a shard group through one Lease per replica, all carrying the
+ * {@link #SHARD_GROUP_LABEL} label. Every replica renews its own Lease and lists the others
+ * a few times per lease duration, a replica whose Lease hasn't been renewed for a lease
+ * duration is considered gone. Expiry is judged by when we last saw the renew time change,
+ * not by the renew time itself, so clock skew between replicas doesn't matter.
+ * <p>
+ * Whenever the set of live replicas changes, a new {@link ShardRing} is built and handed to
+ * the listeners. Replicas see a change at slightly different times, so for up to one renew
+ * interval a key may be owned by two replicas or none.
+ */
+public class ShardMembership implements AutoCloseable {
+    public static final Logger logger = LoggerFactory.getLogger(ShardMembership.class.getSimpleName());
+    public static final String SHARD_GROUP_LABEL = "samplecontroller.k8s.io/shard-group";
+    private static final DateTimeFormatter MICRO_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSSSSXXX");
+
+    private final KubernetesClient client;
+    private final String namespace;
+    private final String group;
+    private final String identity;
+    private final String leaseName;
+    private final Duration leaseDuration;
+    private final List<Consumer<ShardRing>> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, ObservedLease> observedLeases = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile ShardRing ring;
+
+    /**
+     * @param namespace namespace of the Leases
+     * @param group name of the shard group, replicas only share keys within their group
+     * @param identity unique name of this replica, e.g. the pod name
+     * @param leaseDuration time after which a replica which stopped renewing its Lease is dropped
+     */
+    public ShardMembership(KubernetesClient client, String namespace, String group, String identity, Duration leaseDuration) {
+        this.client = client;
+        this.namespace = namespace;
+        this.group = group;
+        this.identity = identity;
+        this.leaseName = group + "-" + identity;
+        this.leaseDuration = leaseDuration;
+        this.ring = new ShardRing(Collections.singleton(identity));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "shard-membership-" + identity);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Registers this replica and starts renewing its Lease. The first view of the group is
+     * taken before returning.
+     */
+    public void start() {
+        refresh();
+        long renewIntervalMillis = Math.max(1, leaseDuration.toMillis() / 3);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException exception) {
+                logger.warn("Unable to refresh membership of shard group {}", group, exception);
+            }
+        }, renewIntervalMillis, renewIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param listener called with the new ring whenever replicas join or leave, on the
+     *                 membership thread
+     */
+    public void addListener(Consumer<ShardRing> listener) {
+        listeners.add(listener);
+    }
+
+    public String getIdentity() {
+        return identity;
+    }
+
+    public ShardRing getRing() {
+        return ring;
+    }
+
+    /**
+     * @param key key in format namespace/name
+     * @return whether this replica is responsible for the key according to the current ring
+     */
+    public boolean owns(String key) {
+        return identity.equals(ring.owner(key));
+    }
+
+    /**
+     * Stops renewing and deletes our Lease, so that the other replicas take over our keys
+     * right away instead of after the lease duration. Called on shutdown as well.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            // A renew still in flight would create the Lease again right after we delete it
+            if (!scheduler.awaitTermination(leaseDuration.toMillis(), TimeUnit.MILLISECONDS)) {
+                logger.warn("Membership refresh of {} still running, deleting its Lease anyway", identity);
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            client.leases().inNamespace(namespace).withName(leaseName).delete();
+        } catch (KubernetesClientException exception) {
+            logger.warn("Unable to delete Lease {}/{}, it will expire instead", namespace, leaseName, exception);
+        }
+    }
+
+    synchronized void refresh() {
+        renew();
+        long now = System.nanoTime();
+        Set<String> members = new HashSet<>();
+        Set<String> listed = new HashSet<>();
+        for (Lease lease : client.leases().inNamespace(namespace).withLabel(SHARD_GROUP_LABEL, group).list().getItems()) {
+            String name = lease.getMetadata().getName();
+            listed.add(name);
+            String holder = lease.getSpec().getHolderIdentity();
+            if (holder == null) {
+                continue;
+            }
+            ZonedDateTime renewTime = lease.getSpec().getRenewTime();
+            ObservedLease observed = observedLeases.get(name);
+            if (observed == null || !Objects.equals(observed.renewTime, renewTime)) {
+                observed = new ObservedLease(renewTime, now);
+                observedLeases.put(name, observed);
+            }
+            Integer durationSeconds = lease.getSpec().getLeaseDurationSeconds();
+            long durationNanos = durationSeconds != null ? TimeUnit.SECONDS.toNanos(durationSeconds) : leaseDuration.toNanos();
+            if (identity.equals(holder) || now - observed.observedAtNanos < durationNanos) {
+                members.add(holder);
+            }
+        }
+        observedLeases.keySet().retainAll(listed);
+        members.add(identity);
+        if (!members.equals(ring.getMembers())) {
+            ring = new ShardRing(members);
+            logger.info("Shard group {} changed, now {}", group, ring.getMembers());
+            for (Consumer<ShardRing> listener : listeners) {
+                listener.accept(ring);
+            }
+        }
+    }
+
+    private void renew() {
+        ZonedDateTime now = ZonedDateTime.now(ZoneOffset.UTC);
+        Map<String, Object> spec = new LinkedHashMap<>();
+        spec.put("holderIdentity", identity);
+        spec.put("renewTime", now.format(MICRO_TIME_FORMAT));
+        try {
+            client.leases().inNamespace(namespace).withName(leaseName).patch(PatchContext.of(PatchType.JSON_MERGE),
+                    Serialization.asJson(Collections.singletonMap("spec", spec)));
+        } catch (KubernetesClientException exception) {
+            if (exception.getCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                throw exception;
+            }
+            Lease lease = new LeaseBuilder()
+                    .withNewMetadata().withName(leaseName).withNamespace(namespace).addToLabels(SHARD_GROUP_LABEL, group).endMetadata()
+                    .withNewSpec()
+                      .withHolderIdentity(identity)
+                      .withLeaseDurationSeconds((int) Math.max(1, leaseDuration.getSeconds()))
+                      .withAcquireTime(now)
+                      .withRenewTime(now)
+                    .endSpec()
+                    .build();
+            client.leases().inNamespace(namespace).resource(lease).create();
+        }
+    }
+
+    private static class ObservedLease {
+        private final ZonedDateTime renewTime;
+        private final long observedAtNanos;
+
+        private ObservedLease(ZonedDateTime renewTime, long observedAtNanos) {
+            this.renewTime = renewTime;
+            this.observedAtNanos = observedAtNanos;
+        }
+    }
+}
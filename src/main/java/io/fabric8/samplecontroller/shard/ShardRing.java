@@ -0,0 +1,91 @@
+package io.fabric8.samplecontroller.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring assigning keys to members. Every member is placed on the
+ * ring a number of times, a key belongs to the first member found walking clockwise from the
+ * key's hash. When a member joins or leaves, only the keys between its points and their
+ * predecessors move, roughly 1/n of them.
+ */
+public class ShardRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Set<String> members;
+    private final long[] points;
+    private final String[] owners;
+
+    public ShardRing(Collection<String> members) {
+        this(members, DEFAULT_VIRTUAL_NODES);
+    }
+
+    public ShardRing(Collection<String> members, int virtualNodes) {
+        this.members = Collections.unmodifiableSet(new TreeSet<>(members));
+        // TreeMap keeps points sorted, on the rare collision the member sorting first wins
+        TreeMap<Long, String> ring = new TreeMap<>();
+        for (String member : this.members) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.putIfAbsent(hash(member + "#" + i), member);
+            }
+        }
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int index = 0;
+        for (Map.Entry<Long, String> point : ring.entrySet()) {
+            points[index] = point.getKey();
+            owners[index] = point.getValue();
+            index++;
+        }
+    }
+
+    /**
+     * @param key key in format namespace/name
+     * @return member owning the key, null if the ring has no members
+     */
+    public String owner(String key) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    public Set<String> getMembers() {
+        return members;
+    }
+
+    /**
+     * 64-bit FNV-1a followed by the MurmurHash3 finalizer, FNV alone spreads similar keys
+     * like foo-1, foo-2 poorly.
+     */
+    static long hash(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardRing" + members;
+    }
+}
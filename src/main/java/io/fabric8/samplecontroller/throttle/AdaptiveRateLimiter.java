@@ -0,0 +1,114 @@
+package io.fabric8.samplecontroller.throttle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket whose rate adapts to the API server, AIMD style: every successful request
+ * raises the rate additively, so that it grows by {@code additiveIncrease} per second of
+ * successes, every throttled request cuts it by {@code multiplicativeDecrease}. The rate
+ * stays between minQps and maxQps and starts out at maxQps.
+ * <p>
+ * A response the server asked to retry after some time additionally stops handing out
+ * tokens until then. Cuts closer together than a second are applied only once, requests
+ * which were already in flight when the server started throttling shouldn't collapse the
+ * rate all the way to minQps.
+ */
+public class AdaptiveRateLimiter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double minQps;
+    private final double maxQps;
+    private final int burst;
+    private final double additiveIncrease;
+    private final double multiplicativeDecrease;
+    private final LongSupplier nanoClock;
+    private double qps;
+    private double tokens;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+    private long lastDecreaseNanos;
+
+    public AdaptiveRateLimiter(double minQps, double maxQps, int burst) {
+        this(minQps, maxQps, burst, 1, 0.5, System::nanoTime);
+    }
+
+    AdaptiveRateLimiter(double minQps, double maxQps, int burst, double additiveIncrease, double multiplicativeDecrease, LongSupplier nanoClock) {
+        if (minQps <= 0 || maxQps < minQps) {
+            throw new IllegalArgumentException("Expected 0 < minQps <= maxQps, got minQps=" + minQps + ", maxQps=" + maxQps);
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1, got " + burst);
+        }
+        this.minQps = minQps;
+        this.maxQps = maxQps;
+        this.burst = burst;
+        this.additiveIncrease = additiveIncrease;
+        this.multiplicativeDecrease = multiplicativeDecrease;
+        this.nanoClock = nanoClock;
+        this.qps = maxQps;
+        this.tokens = burst;
+        this.lastRefillNanos = nanoClock.getAsLong();
+        this.lastDecreaseNanos = lastRefillNanos - NANOS_PER_SECOND;
+        this.pausedUntilNanos = lastRefillNanos;
+    }
+
+    /**
+     * Takes one token, possibly going into debt. Never blocks, callers delay their request
+     * by the returned time on their own.
+     *
+     * @return how long the caller needs to wait for its token, in nanoseconds
+     */
+    public synchronized long reserve() {
+        long now = refill();
+        tokens -= 1;
+        long pausedNanos = Math.max(0, pausedUntilNanos - now);
+        if (tokens >= 0) {
+            return pausedNanos;
+        }
+        return pausedNanos + (long) Math.ceil(-tokens / qps * NANOS_PER_SECOND);
+    }
+
+    /**
+     * Raises the rate after a request went through.
+     */
+    public synchronized void onSuccess() {
+        refill();
+        // Spread the increase over the requests sent within a second at the current rate
+        qps = Math.min(maxQps, qps + additiveIncrease / qps);
+    }
+
+    /**
+     * Lowers the rate after the server rejected a request because of load, i.e. 429 or 5xx.
+     *
+     * @param retryAfterMillis time the server asked us to wait, 0 if it didn't say
+     */
+    public synchronized void onThrottled(long retryAfterMillis) {
+        long now = refill();
+        if (now - lastDecreaseNanos >= NANOS_PER_SECOND) {
+            qps = Math.max(minQps, qps * multiplicativeDecrease);
+            lastDecreaseNanos = now;
+            // Don't let a full bucket undo the cut right away
+            tokens = Math.min(tokens, 0);
+        }
+        if (retryAfterMillis > 0) {
+            pausedUntilNanos = Math.max(pausedUntilNanos, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+        }
+    }
+
+    /**
+     * @return current rate in requests per second
+     */
+    public synchronized double getRate() {
+        return qps;
+    }
+
+    private long refill() {
+        long now = nanoClock.getAsLong();
+        // Tokens only accumulate once a pause is over
+        long refillFrom = Math.max(lastRefillNanos, Math.min(pausedUntilNanos, now));
+        tokens = Math.min(burst, tokens + (now - refillFrom) * qps / NANOS_PER_SECOND);
+        lastRefillNanos = now;
+        return now;
+    }
+}
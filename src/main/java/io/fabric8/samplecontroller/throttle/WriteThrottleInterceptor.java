@@ -0,0 +1,81 @@
+package io.fabric8.samplecontroller.throttle;
+
+import io.fabric8.kubernetes.client.http.AsyncBody;
+import io.fabric8.kubernetes.client.http.HttpRequest;
+import io.fabric8.kubernetes.client.http.HttpResponse;
+import io.fabric8.kubernetes.client.http.Interceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP interceptor which feeds the responses to writes that took a token from the shared
+ * {@link AdaptiveRateLimiter} back into it: 429 and 5xx lower the write rate, successful
+ * writes raise it again. The sender marks these writes with {@link #RESERVED_HEADER}, any
+ * other request sent through the same client, like Lease renewals, doesn't count.
+ * <p>
+ * Holding writes back is up to the sender, which reserves a token before sending and
+ * schedules the request once it's its turn. Interceptors run on the client's request path
+ * and mustn't block. Retrying the throttled request itself is left to the client, which
+ * already honours Retry-After. Register it through
+ * {@code KubernetesClientBuilder#withHttpClientBuilderConsumer}.
+ */
+public class WriteThrottleInterceptor implements Interceptor {
+    public static final Logger logger = LoggerFactory.getLogger(WriteThrottleInterceptor.class.getSimpleName());
+    public static final String NAME = "samplecontroller-write-throttle";
+    /**
+     * Header marking a write which took a token from the rate limiter
+     */
+    public static final String RESERVED_HEADER = "X-Samplecontroller-Write-Throttle";
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final AdaptiveRateLimiter rateLimiter;
+    private final Runnable onThrottled;
+
+    public WriteThrottleInterceptor(AdaptiveRateLimiter rateLimiter) {
+        this(rateLimiter, () -> { });
+    }
+
+    /**
+     * @param onThrottled called for every throttled write, e.g. to count them
+     */
+    public WriteThrottleInterceptor(AdaptiveRateLimiter rateLimiter, Runnable onThrottled) {
+        this.rateLimiter = rateLimiter;
+        this.onThrottled = onThrottled;
+    }
+
+    @Override
+    public void after(HttpRequest request, HttpResponse<?> response, AsyncBody.Consumer<List<ByteBuffer>> consumer) {
+        if (request.header(RESERVED_HEADER) == null) {
+            return;
+        }
+        int code = response.code();
+        if (code == TOO_MANY_REQUESTS || code >= 500) {
+            long retryAfterMillis = getRetryAfterMillis(response);
+            rateLimiter.onThrottled(retryAfterMillis);
+            onThrottled.run();
+            logger.warn("{} {} throttled with {}, retry after {} ms, write rate now {} qps", request.method(), request.uri().getPath(),
+                    code, retryAfterMillis, String.format("%.1f", rateLimiter.getRate()));
+        } else if (response.isSuccessful()) {
+            rateLimiter.onSuccess();
+        }
+    }
+
+    /**
+     * @return Retry-After in milliseconds if given in seconds, the form used by the API server, 0 otherwise
+     */
+    static long getRetryAfterMillis(HttpResponse<?> response) {
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim()));
+        } catch (NumberFormatException numberFormatException) {
+            return 0;
+        }
+    }
+}
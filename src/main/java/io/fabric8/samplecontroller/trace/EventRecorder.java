@@ -0,0 +1,158 @@
+package io.fabric8.samplecontroller.trace;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records informer events into a trace file, which {@link EventReplayer} can replay later on,
+ * e.g. to reproduce a resync storm or a mass rollout against a local controller.
+ * <p>
+ * Informer threads only put the event into a bounded queue, a background thread serializes
+ * and writes it. Should the queue fill up, events are dropped and counted rather than holding
+ * up the informers. A trace is a gzip compressed file holding a header with the time the
+ * recording started, followed by one record per event: resource, event type, offset from the
+ * start in nanoseconds and the object as length prefixed JSON. The file is flushed whenever
+ * the writer catches up, so a trace cut short by a crash can still be read up to that point.
+ */
+public class EventRecorder implements AutoCloseable {
+    public static final Logger logger = LoggerFactory.getLogger(EventRecorder.class.getSimpleName());
+    static final int MAGIC = 0x53435431;
+    static final int VERSION = 1;
+    private static final TraceEvent END = new TraceEvent(0, null, null, null);
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final BlockingQueue<TraceEvent> events;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param file trace file, replaced if it exists
+     * @param capacity number of events which may wait for the writer before events are dropped
+     */
+    public EventRecorder(Path file, int capacity) throws IOException {
+        this.file = file;
+        this.events = new ArrayBlockingQueue<>(capacity);
+        this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file), true)));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.flush();
+        this.writer = new Thread(this::writeEvents, "event-recorder");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Records every event of the informer, the same ones the controller's handlers see. Has
+     * to be called before the informer is started to record the initial adds.
+     */
+    public <T extends HasMetadata> void recordFrom(SharedIndexInformer<T> informer, TraceEvent.Resource resource) {
+        informer.addEventHandler(new ResourceEventHandler<T>() {
+            @Override
+            public void onAdd(T obj) {
+                record(resource, TraceEvent.Type.ADD, obj);
+            }
+
+            @Override
+            public void onUpdate(T oldObj, T newObj) {
+                record(resource, TraceEvent.Type.UPDATE, newObj);
+            }
+
+            @Override
+            public void onDelete(T obj, boolean deletedFinalStateUnknown) {
+                record(resource, TraceEvent.Type.DELETE, obj);
+            }
+        });
+    }
+
+    /**
+     * Objects are serialized later on by the writer, which is safe since informer objects are
+     * never modified.
+     */
+    void record(TraceEvent.Resource resource, TraceEvent.Type type, HasMetadata object) {
+        if (closed || !events.offer(new TraceEvent(System.nanoTime() - startNanos, resource, type, object))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * @return events written to the trace so far
+     */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    /**
+     * @return events dropped so far because the writer couldn't keep up
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes the events still queued and completes the trace file.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (events.offer(END, 5, TimeUnit.SECONDS)) {
+                writer.join(TimeUnit.SECONDS.toMillis(30));
+            }
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Recorded {} events to {}, dropped {}", getRecorded(), file, getDropped());
+    }
+
+    private void writeEvents() {
+        try (DataOutputStream output = out) {
+            while (true) {
+                TraceEvent event = events.poll();
+                if (event == null) {
+                    // Caught up, make everything so far readable
+                    output.flush();
+                    event = events.take();
+                }
+                if (event == END) {
+                    return;
+                }
+                byte[] json = Serialization.asJson(event.getObject()).getBytes(StandardCharsets.UTF_8);
+                output.writeByte(event.getResource().ordinal());
+                output.writeByte(event.getType().ordinal());
+                output.writeLong(event.getOffsetNanos());
+                output.writeInt(json.length);
+                output.write(json);
+                recorded.increment();
+            }
+        } catch (IOException ioException) {
+            logger.error("Unable to write event trace {}, stopped recording", file, ioException);
+            closed = true;
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package io.fabric8.samplecontroller.trace;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.api.model.OwnerReferenceBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.base.PatchContext;
+import io.fabric8.kubernetes.client.dsl.base.PatchType;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics.ReconcileOutcome;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a trace recorded by {@link EventRecorder} as writes against an API server, usually
+ * the CRUD mock server, while a controller under test watches it. The controller then sees
+ * the same sequence of events, through its own informers, as the recording controller did.
+ * <p>
+ * Adds and updates are applied as a create, or a merge patch of labels, annotations, owner
+ * references and spec if the object exists already. Statuses aren't replayed, they're what
+ * the controller under test is supposed to write. Recorded Foo UIDs are mapped onto the UIDs
+ * of the replayed Foos, so that replayed Deployments are still owned by them.
+ */
+public class EventReplayer {
+    public static final Logger logger = LoggerFactory.getLogger(EventReplayer.class.getSimpleName());
+    /**
+     * Speed which applies the next event as soon as the previous one is done
+     */
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+    private static final List<String> WRITE_VERBS = Collections.unmodifiableList(Arrays.asList("create", "update", "patch", "delete"));
+
+    private final KubernetesClient client;
+    private final ControllerMetrics metrics;
+    private final Map<String, String> fooUids = new HashMap<>();
+    private boolean replayDeployments = true;
+    private Duration sampleInterval = Duration.ofMillis(100);
+
+    /**
+     * @param client client the events are written through, shouldn't be the one of the controller
+     *               so that its requests aren't counted as controller writes
+     * @param metrics metrics of the controller under test
+     */
+    public EventReplayer(KubernetesClient client, ControllerMetrics metrics) {
+        this.client = client;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param replayDeployments false to only replay Foo events and leave the Deployments to the
+     *                          controller under test. Recorded Deployment events include the
+     *                          ones caused by the recording controller itself.
+     */
+    public void setReplayDeployments(boolean replayDeployments) {
+        this.replayDeployments = replayDeployments;
+    }
+
+    /**
+     * @param sampleInterval time between two samples of the work queue depth
+     */
+    public void setSampleInterval(Duration sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Applies every event of the trace, then waits for the work queue of the controller to
+     * drain.
+     *
+     * @param trace trace file to replay
+     * @param speed 1 replays with the recorded timing, 10 ten times as fast,
+     *              {@link #AS_FAST_AS_POSSIBLE} without any pauses
+     * @param drainTimeout time to wait for the work queue to drain after the last event
+     */
+    public ReplayReport replay(Path trace, double speed, Duration drainTimeout) throws IOException, InterruptedException {
+        if (speed <= 0) {
+            throw new IllegalArgumentException("speed must be positive, got " + speed);
+        }
+        Map<String, Long> requestsBefore = metrics.getApiRequestCounts();
+        long reconcilesBefore = getReconcileCount();
+        SortedMap<Long, Integer> queueDepth = new TreeMap<>();
+        long startNanos = System.nanoTime();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replay-queue-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, sampleInterval.toMillis());
+        sampler.scheduleAtFixedRate(() -> {
+            synchronized (queueDepth) {
+                queueDepth.put(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), (int) metrics.getWorkQueueDepth());
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+
+        long events = 0;
+        long failedEvents = 0;
+        long replayNanos;
+        long drainNanos;
+        boolean drained;
+        try (EventTraceReader reader = new EventTraceReader(trace)) {
+            TraceEvent event;
+            while ((event = reader.next()) != null) {
+                long delayNanos = (long) (event.getOffsetNanos() / speed) - (System.nanoTime() - startNanos);
+                if (delayNanos > 0) {
+                    TimeUnit.NANOSECONDS.sleep(delayNanos);
+                }
+                events++;
+                try {
+                    apply(event);
+                } catch (KubernetesClientException exception) {
+                    failedEvents++;
+                    logger.debug("Unable to apply {}", event, exception);
+                }
+            }
+            replayNanos = System.nanoTime() - startNanos;
+            drained = awaitDrained(drainTimeout);
+            drainNanos = System.nanoTime() - startNanos;
+        } finally {
+            sampler.shutdownNow();
+        }
+
+        Map<String, Long> writes = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> requests : metrics.getApiRequestCounts().entrySet()) {
+            long count = requests.getValue() - requestsBefore.getOrDefault(requests.getKey(), 0L);
+            if (count > 0 && WRITE_VERBS.contains(requests.getKey().substring(0, requests.getKey().indexOf(' ')))) {
+                writes.put(requests.getKey(), count);
+            }
+        }
+        ReplayReport report;
+        synchronized (queueDepth) {
+            report = new ReplayReport(events, failedEvents, replayNanos, drainNanos, drained, new TreeMap<>(queueDepth),
+                    writes, getReconcileCount() - reconcilesBefore);
+        }
+        logger.info("Replayed {}: {}", trace, report);
+        return report;
+    }
+
+    private void apply(TraceEvent event) {
+        HasMetadata object = event.getObject();
+        String namespace = object.getMetadata().getNamespace();
+        String name = object.getMetadata().getName();
+        switch (event.getResource()) {
+            case FOO:
+                if (event.getType() == TraceEvent.Type.DELETE) {
+                    client.resources(Foo.class).inNamespace(namespace).withName(name).delete();
+                    fooUids.remove(object.getMetadata().getUid());
+                    return;
+                }
+                Foo foo = new Foo();
+                foo.setMetadata(copyMetadata(object.getMetadata(), Collections.emptyList()));
+                foo.setSpec(((Foo) object).getSpec());
+                Foo applied = createOrPatch(event.getType(), foo, Collections.singletonMap("spec", foo.getSpec()));
+                fooUids.put(object.getMetadata().getUid(), applied.getMetadata().getUid());
+                return;
+            case DEPLOYMENT:
+                if (!replayDeployments) {
+                    return;
+                }
+                if (event.getType() == TraceEvent.Type.DELETE) {
+                    client.apps().deployments().inNamespace(namespace).withName(name).delete();
+                    return;
+                }
+                Deployment deployment = new Deployment();
+                deployment.setMetadata(copyMetadata(object.getMetadata(), mapOwnerReferences(object.getMetadata().getOwnerReferences())));
+                deployment.setSpec(((Deployment) object).getSpec());
+                createOrPatch(event.getType(), deployment, Collections.singletonMap("spec", deployment.getSpec()));
+                return;
+            default:
+                throw new IllegalStateException("Unknown resource " + event.getResource());
+        }
+    }
+
+    /**
+     * Creates the object, or merge patches it if it exists already. Unlike an update, a
+     * merge patch neither needs the current resource version nor touches the status. Adds
+     * try the create first and updates the patch, so that usually a single request is needed.
+     */
+    private <T extends HasMetadata> T createOrPatch(TraceEvent.Type type, T object, Map<String, Object> fields) {
+        if (type == TraceEvent.Type.UPDATE) {
+            try {
+                return patch(object, fields);
+            } catch (KubernetesClientException exception) {
+                if (exception.getCode() != HttpURLConnection.HTTP_NOT_FOUND) {
+                    throw exception;
+                }
+            }
+            return client.resource(object).create();
+        }
+        try {
+            return client.resource(object).create();
+        } catch (KubernetesClientException exception) {
+            if (exception.getCode() != HttpURLConnection.HTTP_CONFLICT) {
+                throw exception;
+            }
+        }
+        return patch(object, fields);
+    }
+
+    private <T extends HasMetadata> T patch(T object, Map<String, Object> fields) {
+        Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("labels", object.getMetadata().getLabels());
+        metadata.put("annotations", object.getMetadata().getAnnotations());
+        metadata.put("ownerReferences", object.getMetadata().getOwnerReferences());
+        Map<String, Object> patch = new LinkedHashMap<>(fields);
+        patch.put("metadata", metadata);
+        return client.resource(object).patch(PatchContext.of(PatchType.JSON_MERGE), Serialization.asJson(patch));
+    }
+
+    /**
+     * Only keeps what a client would set, everything else is up to the API server.
+     */
+    private static ObjectMeta copyMetadata(ObjectMeta recorded, List<OwnerReference> ownerReferences) {
+        return new ObjectMetaBuilder()
+                .withName(recorded.getName())
+                .withNamespace(recorded.getNamespace())
+                .withLabels(recorded.getLabels())
+                .withAnnotations(recorded.getAnnotations())
+                .withOwnerReferences(ownerReferences)
+                .build();
+    }
+
+    private List<OwnerReference> mapOwnerReferences(List<OwnerReference> recorded) {
+        List<OwnerReference> ownerReferences = new ArrayList<>(recorded.size());
+        for (OwnerReference ownerReference : recorded) {
+            String uid = fooUids.getOrDefault(ownerReference.getUid(), ownerReference.getUid());
+            ownerReferences.add(new OwnerReferenceBuilder(ownerReference).withUid(uid).build());
+        }
+        return ownerReferences;
+    }
+
+    /**
+     * The queue has to stay empty for a sample interval, reconciles still running can enqueue
+     * keys again through the events caused by their own writes.
+     */
+    private boolean awaitDrained(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long emptySince = System.nanoTime();
+        while (System.nanoTime() - emptySince < sampleInterval.toNanos()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            if (metrics.getWorkQueueDepth() > 0) {
+                emptySince = System.nanoTime();
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private long getReconcileCount() {
+        long reconciles = 0;
+        for (ReconcileOutcome outcome : ReconcileOutcome.values()) {
+            reconciles += metrics.getReconcileCount(outcome);
+        }
+        return reconciles;
+    }
+}
@@ -0,0 +1,64 @@
+package io.fabric8.samplecontroller.trace;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.utils.Serialization;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a trace written by {@link EventRecorder} one event at a time, so that traces of any
+ * size can be replayed.
+ */
+public class EventTraceReader implements AutoCloseable {
+    private static final TraceEvent.Resource[] RESOURCES = TraceEvent.Resource.values();
+    private static final TraceEvent.Type[] TYPES = TraceEvent.Type.values();
+
+    private final DataInputStream in;
+    private final long startEpochMillis;
+
+    public EventTraceReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))));
+        if (in.readInt() != EventRecorder.MAGIC || in.readInt() != EventRecorder.VERSION) {
+            in.close();
+            throw new IOException("Not an event trace of this version: " + file);
+        }
+        this.startEpochMillis = in.readLong();
+    }
+
+    /**
+     * @return wall clock time the recording started at, in milliseconds since the epoch
+     */
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    /**
+     * @return next event, null at the end of the trace. A trace cut short, e.g. by a crash of
+     * the recording controller, ends after its last complete event.
+     */
+    public TraceEvent next() throws IOException {
+        try {
+            TraceEvent.Resource resource = RESOURCES[in.readUnsignedByte()];
+            TraceEvent.Type type = TYPES[in.readUnsignedByte()];
+            long offsetNanos = in.readLong();
+            byte[] json = new byte[in.readInt()];
+            in.readFully(json);
+            HasMetadata object = Serialization.unmarshal(new ByteArrayInputStream(json), resource.getType());
+            return new TraceEvent(offsetNanos, resource, type, object);
+        } catch (EOFException endOfTrace) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,127 @@
+package io.fabric8.samplecontroller.trace;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a replay, see {@link EventReplayer#replay}.
+ */
+public class ReplayReport {
+    private final long events;
+    private final long failedEvents;
+    private final long replayNanos;
+    private final long drainNanos;
+    private final boolean drained;
+    private final SortedMap<Long, Integer> queueDepth;
+    private final Map<String, Long> writes;
+    private final long reconciles;
+
+    ReplayReport(long events, long failedEvents, long replayNanos, long drainNanos, boolean drained,
+                 SortedMap<Long, Integer> queueDepth, Map<String, Long> writes, long reconciles) {
+        this.events = events;
+        this.failedEvents = failedEvents;
+        this.replayNanos = replayNanos;
+        this.drainNanos = drainNanos;
+        this.drained = drained;
+        this.queueDepth = Collections.unmodifiableSortedMap(queueDepth);
+        this.writes = Collections.unmodifiableMap(writes);
+        this.reconciles = reconciles;
+    }
+
+    /**
+     * @return events applied, including failed ones
+     */
+    public long getEvents() {
+        return events;
+    }
+
+    /**
+     * @return events which couldn't be applied to the API server
+     */
+    public long getFailedEvents() {
+        return failedEvents;
+    }
+
+    /**
+     * @return time it took to apply all events
+     */
+    public long getReplayNanos() {
+        return replayNanos;
+    }
+
+    /**
+     * @return time from the first event until the work queue was empty after the last one
+     */
+    public long getDrainNanos() {
+        return drainNanos;
+    }
+
+    /**
+     * @return whether the work queue drained before the timeout
+     */
+    public boolean isDrained() {
+        return drained;
+    }
+
+    /**
+     * @return events the controller worked off per second, up to the drained work queue
+     */
+    public double getEventsPerSecond() {
+        return drainNanos > 0 ? events * (double) TimeUnit.SECONDS.toNanos(1) / drainNanos : 0;
+    }
+
+    /**
+     * @return work queue depth sampled during the replay, by milliseconds since the first event
+     */
+    public SortedMap<Long, Integer> getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return highest sampled work queue depth
+     */
+    public int getMaxQueueDepth() {
+        int max = 0;
+        for (int depth : queueDepth.values()) {
+            max = Math.max(max, depth);
+        }
+        return max;
+    }
+
+    /**
+     * @return writes sent by the controller during the replay by verb and resource, e.g.
+     * "patch deployments"
+     */
+    public Map<String, Long> getWrites() {
+        return writes;
+    }
+
+    /**
+     * @return sum of all writes sent by the controller during the replay
+     */
+    public long getWriteCount() {
+        long count = 0;
+        for (long verbCount : writes.values()) {
+            count += verbCount;
+        }
+        return count;
+    }
+
+    /**
+     * @return reconciles completed during the replay, whatever their outcome
+     */
+    public long getReconciles() {
+        return reconciles;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d events (%d failed) replayed in %d ms, drained%s after %d ms, %.1f events/s, " +
+                        "max queue depth %d, %d reconciles, %d writes %s",
+                events, failedEvents, TimeUnit.NANOSECONDS.toMillis(replayNanos), drained ? "" : " NOT",
+                TimeUnit.NANOSECONDS.toMillis(drainNanos), getEventsPerSecond(), getMaxQueueDepth(), reconciles,
+                getWriteCount(), writes);
+    }
+}
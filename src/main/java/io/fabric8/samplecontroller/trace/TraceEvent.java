@@ -0,0 +1,75 @@
+package io.fabric8.samplecontroller.trace;
+
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+
+/**
+ * A single informer event of an event trace.
+ */
+public class TraceEvent {
+    /**
+     * Resources whose events can be traced, the ordinal is part of the trace format
+     */
+    public enum Resource {
+        FOO(Foo.class),
+        DEPLOYMENT(Deployment.class);
+
+        private final Class<? extends HasMetadata> type;
+
+        Resource(Class<? extends HasMetadata> type) {
+            this.type = type;
+        }
+
+        public Class<? extends HasMetadata> getType() {
+            return type;
+        }
+    }
+
+    /**
+     * Informer event types, the ordinal is part of the trace format
+     */
+    public enum Type {
+        ADD,
+        UPDATE,
+        DELETE
+    }
+
+    private final long offsetNanos;
+    private final Resource resource;
+    private final Type type;
+    private final HasMetadata object;
+
+    /**
+     * @param offsetNanos time of the event relative to the start of the recording
+     * @param object object after an add or update, last known state for a delete
+     */
+    public TraceEvent(long offsetNanos, Resource resource, Type type, HasMetadata object) {
+        this.offsetNanos = offsetNanos;
+        this.resource = resource;
+        this.type = type;
+        this.object = object;
+    }
+
+    public long getOffsetNanos() {
+        return offsetNanos;
+    }
+
+    public Resource getResource() {
+        return resource;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public HasMetadata getObject() {
+        return object;
+    }
+
+    @Override
+    public String toString() {
+        return "TraceEvent{offsetNanos=" + offsetNanos + ",resource=" + resource + ",type=" + type +
+                ",object=" + object.getMetadata().getNamespace() + "/" + object.getMetadata().getName() + "}";
+    }
+}
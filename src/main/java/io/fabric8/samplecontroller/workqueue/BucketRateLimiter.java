@@ -0,0 +1,53 @@
+package io.fabric8.samplecontroller.workqueue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Overall token bucket rate limiter. It doesn't track items, every call to
+ * {@link #when(Object)} reserves one token and returns how long the caller
+ * needs to wait for it.
+ *
+ * @param <T> type of the items
+ */
+public class BucketRateLimiter<T> implements RateLimiter<T> {
+    private final double qps;
+    private final int burst;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public BucketRateLimiter(double qps, int burst) {
+        this(qps, burst, System::nanoTime);
+    }
+
+    BucketRateLimiter(double qps, int burst, LongSupplier nanoClock) {
+        this.qps = qps;
+        this.burst = burst;
+        this.nanoClock = nanoClock;
+        this.tokens = burst;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    @Override
+    public synchronized long when(T item) {
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * qps / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / qps * 1000);
+    }
+
+    @Override
+    public void forget(T item) {
+        // Nothing to forget, the bucket is shared by all items
+    }
+
+    @Override
+    public int numRequeues(T item) {
+        return 0;
+    }
+}
@@ -0,0 +1,106 @@
+package io.fabric8.samplecontroller.workqueue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link WorkQueue} which can add items after a delay. If the same item is
+ * scheduled more than once, it's added once, at the earliest of the times and with the
+ * highest of the priorities it was scheduled with.
+ *
+ * @param <T> type of the items
+ */
+public class DelayingWorkQueue<T> extends WorkQueue<T> {
+    private final ScheduledExecutorService scheduler;
+    private final Map<T, Schedule> waiting = new ConcurrentHashMap<>();
+
+    public DelayingWorkQueue() {
+        this(WorkQueueMetrics.NOOP);
+    }
+
+    public DelayingWorkQueue(WorkQueueMetrics metrics) {
+        super(metrics);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "workqueue-delay");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds an item to the queue once the given delay has passed.
+     *
+     * @param item item to add
+     * @param delayMillis delay in milliseconds, items with a non-positive delay are added immediately
+     */
+    public void addAfter(T item, long delayMillis) {
+        addAfter(item, delayMillis, Priority.NORMAL);
+    }
+
+    /**
+     * Adds an item to the given lane of the queue once the given delay has passed.
+     *
+     * @param item item to add
+     * @param delayMillis delay in milliseconds, items with a non-positive delay are added immediately
+     * @param priority lane to add the item to
+     */
+    public void addAfter(T item, long delayMillis, Priority priority) {
+        if (isShuttingDown()) {
+            return;
+        }
+        if (delayMillis <= 0) {
+            add(item, priority);
+            return;
+        }
+        Schedule requested = new Schedule(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), priority);
+        Schedule merged = waiting.merge(item, requested, Schedule::merge);
+        if (merged.readyAtNanos < requested.readyAtNanos) {
+            // An earlier schedule is already pending, its timer adds the item with the merged priority
+            return;
+        }
+        try {
+            scheduler.schedule(() -> {
+                Schedule due = waiting.get(item);
+                if (due != null && due.readyAtNanos - System.nanoTime() <= 0 && waiting.remove(item, due)) {
+                    add(item, due.priority);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException shutDownMeanwhile) {
+            // Dropped, same as if the queue had been shut down before the check above
+            waiting.remove(item, merged);
+        }
+    }
+
+    @Override
+    public void shutDown() {
+        super.shutDown();
+        scheduler.shutdownNow();
+        waiting.clear();
+    }
+
+    private static final class Schedule {
+        private final long readyAtNanos;
+        private final Priority priority;
+
+        private Schedule(long readyAtNanos, Priority priority) {
+            this.readyAtNanos = readyAtNanos;
+            this.priority = priority;
+        }
+
+        /**
+         * @return the earlier of both times with the higher of both priorities
+         */
+        private static Schedule merge(Schedule pending, Schedule requested) {
+            long readyAtNanos = Math.min(pending.readyAtNanos, requested.readyAtNanos);
+            Priority priority = pending.priority.compareTo(requested.priority) <= 0 ? pending.priority : requested.priority;
+            if (readyAtNanos == pending.readyAtNanos && priority == pending.priority) {
+                return pending;
+            }
+            return new Schedule(readyAtNanos, priority);
+        }
+    }
+}
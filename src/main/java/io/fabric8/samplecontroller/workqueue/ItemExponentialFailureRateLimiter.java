@@ -0,0 +1,41 @@
+package io.fabric8.samplecontroller.workqueue;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-item exponential backoff: baseDelay * 2^failures, capped at maxDelay.
+ *
+ * @param <T> type of the items
+ */
+public class ItemExponentialFailureRateLimiter<T> implements RateLimiter<T> {
+    private final Map<T, Integer> failures = new ConcurrentHashMap<>();
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public ItemExponentialFailureRateLimiter(long baseDelayMillis, long maxDelayMillis) {
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @Override
+    public long when(T item) {
+        int exponent = failures.merge(item, 1, Integer::sum) - 1;
+        // Avoid overflowing, anything beyond 2^62 is capped anyway
+        if (exponent >= 62) {
+            return maxDelayMillis;
+        }
+        double backoff = baseDelayMillis * Math.pow(2, exponent);
+        return backoff > maxDelayMillis ? maxDelayMillis : (long) backoff;
+    }
+
+    @Override
+    public void forget(T item) {
+        failures.remove(item);
+    }
+
+    @Override
+    public int numRequeues(T item) {
+        return failures.getOrDefault(item, 0);
+    }
+}
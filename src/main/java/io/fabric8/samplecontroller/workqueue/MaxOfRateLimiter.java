@@ -0,0 +1,46 @@
+package io.fabric8.samplecontroller.workqueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Calls every wrapped {@link RateLimiter} and returns the worst case delay.
+ *
+ * @param <T> type of the items
+ */
+public class MaxOfRateLimiter<T> implements RateLimiter<T> {
+    private final List<RateLimiter<T>> limiters;
+
+    @SafeVarargs
+    public MaxOfRateLimiter(RateLimiter<T>... limiters) {
+        this.limiters = new ArrayList<>(limiters.length);
+        for (RateLimiter<T> limiter : limiters) {
+            this.limiters.add(limiter);
+        }
+    }
+
+    @Override
+    public long when(T item) {
+        long delay = 0;
+        for (RateLimiter<T> limiter : limiters) {
+            delay = Math.max(delay, limiter.when(item));
+        }
+        return delay;
+    }
+
+    @Override
+    public void forget(T item) {
+        for (RateLimiter<T> limiter : limiters) {
+            limiter.forget(item);
+        }
+    }
+
+    @Override
+    public int numRequeues(T item) {
+        int requeues = 0;
+        for (RateLimiter<T> limiter : limiters) {
+            requeues = Math.max(requeues, limiter.numRequeues(item));
+        }
+        return requeues;
+    }
+}
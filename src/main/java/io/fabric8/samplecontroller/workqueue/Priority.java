@@ -0,0 +1,28 @@
+package io.fabric8.samplecontroller.workqueue;
+
+import java.util.Locale;
+
+/**
+ * Lane of a {@link WorkQueue}. Items are always handed out from the highest lane which
+ * isn't empty, FIFO within a lane.
+ */
+public enum Priority {
+    /**
+     * Changes a user is waiting for, e.g. a new Foo or a changed spec.
+     */
+    HIGH,
+    /**
+     * Everything else caused by an event, as well as retries.
+     */
+    NORMAL,
+    /**
+     * Periodic resyncs, which only catch up on anything that might have been missed.
+     */
+    LOW;
+
+    private final String label = name().toLowerCase(Locale.ROOT);
+
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,28 @@
+package io.fabric8.samplecontroller.workqueue;
+
+/**
+ * Decides how long an item has to wait before it's allowed to be processed again.
+ *
+ * @param <T> type of the items
+ */
+public interface RateLimiter<T> {
+    /**
+     * @param item item which is about to be re-queued
+     * @return delay in milliseconds after which the item can be processed
+     */
+    long when(T item);
+
+    /**
+     * Indicates that an item is finished being retried, regardless of
+     * whether it succeeded or failed. Clears any per-item state.
+     *
+     * @param item item to forget
+     */
+    void forget(T item);
+
+    /**
+     * @param item item to look up
+     * @return number of times the item has been requeued since it was last forgotten
+     */
+    int numRequeues(T item);
+}
@@ -0,0 +1,58 @@
+package io.fabric8.samplecontroller.workqueue;
+
+/**
+ * A {@link DelayingWorkQueue} which consults a {@link RateLimiter} to decide when
+ * a failed item may be retried.
+ *
+ * @param <T> type of the items
+ */
+public class RateLimitingWorkQueue<T> extends DelayingWorkQueue<T> {
+    private final RateLimiter<T> rateLimiter;
+    private final WorkQueueMetrics metrics;
+
+    public RateLimitingWorkQueue(RateLimiter<T> rateLimiter) {
+        this(rateLimiter, WorkQueueMetrics.NOOP);
+    }
+
+    public RateLimitingWorkQueue(RateLimiter<T> rateLimiter, WorkQueueMetrics metrics) {
+        super(metrics);
+        this.rateLimiter = rateLimiter;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Adds an item to the queue once the rate limiter says it's ok.
+     *
+     * @param item item to add
+     */
+    public void addRateLimited(T item) {
+        metrics.retried();
+        addAfter(item, rateLimiter.when(item));
+    }
+
+    /**
+     * Stops tracking retries for an item, call it once the item has been processed successfully.
+     *
+     * @param item item to forget
+     */
+    public void forget(T item) {
+        rateLimiter.forget(item);
+    }
+
+    public int numRequeues(T item) {
+        return rateLimiter.numRequeues(item);
+    }
+
+    /**
+     * Same defaults as client-go's DefaultControllerRateLimiter: per-item exponential
+     * backoff from 5ms up to 1000s, combined with an overall 10 qps / 100 burst bucket.
+     *
+     * @param <T> type of the items
+     * @return rate limiter suited for controllers
+     */
+    public static <T> RateLimiter<T> defaultControllerRateLimiter() {
+        return new MaxOfRateLimiter<>(
+                new ItemExponentialFailureRateLimiter<>(5, 1000 * 1000),
+                new BucketRateLimiter<>(10, 100));
+    }
+}
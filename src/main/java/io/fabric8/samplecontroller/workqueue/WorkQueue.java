@@ -0,0 +1,268 @@
+package io.fabric8.samplecontroller.workqueue;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A deduplicating work queue modelled after client-go's workqueue. It guarantees:
+ * <ul>
+ *     <li>An item which is queued but not yet processed is only present once (dirty set)</li>
+ *     <li>An item is never handed to two consumers at the same time (processing set)</li>
+ *     <li>An item added while being processed is re-queued once {@link #done(Object)} is called</li>
+ * </ul>
+ * Items are queued in one lane per {@link Priority}, consumers always get the oldest item
+ * of the highest lane which isn't empty. Adding an item which is already queued with a
+ * higher priority moves it up, it never moves down.
+ *
+ * @param <T> type of the items, usually a namespace/name key
+ */
+public class WorkQueue<T> {
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    // Lanes are sets so that an item moving up can be taken out of its old lane cheaply
+    private final Map<Priority, Set<T>> lanes = new EnumMap<>(Priority.class);
+    private final Map<T, Priority> dirty = new HashMap<>();
+    // Items being processed, with the lane they were taken from
+    private final Map<T, Priority> processing = new HashMap<>();
+    private final Map<T, Long> queuedAt = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final WorkQueueMetrics metrics;
+    private boolean shuttingDown;
+    private int size;
+
+    public WorkQueue() {
+        this(WorkQueueMetrics.NOOP);
+    }
+
+    public WorkQueue(WorkQueueMetrics metrics) {
+        this.metrics = metrics;
+        for (Priority priority : PRIORITIES) {
+            lanes.put(priority, new LinkedHashSet<>());
+        }
+    }
+
+    /**
+     * Same as {@link #add(Object, Priority)} with {@link Priority#NORMAL}.
+     *
+     * @param item item to add
+     */
+    public void add(T item) {
+        add(item, Priority.NORMAL);
+    }
+
+    /**
+     * Marks an item as needing processing. Adding an item which is already
+     * waiting in the queue is a no-op, apart from moving it up to the given priority.
+     *
+     * @param item item to add
+     * @param priority lane to queue the item in
+     */
+    public void add(T item, Priority priority) {
+        lock.lock();
+        try {
+            if (shuttingDown) {
+                return;
+            }
+            metrics.added();
+            Priority queuedPriority = dirty.get(item);
+            if (queuedPriority != null && queuedPriority.compareTo(priority) <= 0) {
+                return;
+            }
+            dirty.put(item, priority);
+            if (processing.containsKey(item)) {
+                // It'll be re-queued once the consumer calls done()
+                queuedAt.putIfAbsent(item, System.nanoTime());
+                return;
+            }
+            if (queuedPriority != null) {
+                // Moving up, the time spent waiting so far still counts
+                lanes.get(queuedPriority).remove(item);
+                size--;
+            } else {
+                queuedAt.put(item, System.nanoTime());
+            }
+            enqueue(item, priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until an item can be processed. The caller must call {@link #done(Object)}
+     * once it has finished processing the returned item.
+     *
+     * @return next item to process, or null if the queue has been shut down
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public T get() throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0 && !shuttingDown) {
+                notEmpty.await();
+            }
+            if (size == 0) {
+                return null;
+            }
+            return takeNext();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #get()}, but takes up to maxItems at once, in the same order repeated
+     * calls to {@link #get()} would return them. Blocks only until the first item can be
+     * processed, it doesn't wait for the batch to fill up. The caller must call
+     * {@link #done(Object)} for every returned item.
+     *
+     * @param maxItems upper bound of items to take
+     * @return items to process, or null if the queue has been shut down
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<T> getBatch(int maxItems) throws InterruptedException {
+        if (maxItems < 1) {
+            throw new IllegalArgumentException("maxItems must be at least 1, got " + maxItems);
+        }
+        lock.lock();
+        try {
+            while (size == 0 && !shuttingDown) {
+                notEmpty.await();
+            }
+            if (size == 0) {
+                return null;
+            }
+            List<T> items = new ArrayList<>(Math.min(size, maxItems));
+            while (size > 0 && items.size() < maxItems) {
+                items.add(takeNext());
+            }
+            return items;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the oldest item of the highest lane which isn't empty, the lock has to be held
+     * and the queue must not be empty.
+     */
+    private T takeNext() {
+        for (Priority priority : PRIORITIES) {
+            Iterator<T> lane = lanes.get(priority).iterator();
+            if (lane.hasNext()) {
+                T item = lane.next();
+                lane.remove();
+                size--;
+                processing.put(item, priority);
+                dirty.remove(item);
+                Long addedAt = queuedAt.remove(item);
+                if (addedAt != null) {
+                    metrics.dequeued(priority, System.nanoTime() - addedAt);
+                }
+                return item;
+            }
+        }
+        throw new IllegalStateException("Work queue size out of sync with its lanes");
+    }
+
+    /**
+     * Marks an item as done processing. If it has been marked as dirty again
+     * while it was being processed, it will be re-added to the queue.
+     *
+     * @param item item returned by {@link #get()}
+     */
+    public void done(T item) {
+        lock.lock();
+        try {
+            processing.remove(item);
+            Priority priority = dirty.get(item);
+            if (priority != null) {
+                enqueue(item, priority);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands an item back without processing it, e.g. because the consumer may no longer
+     * process items. Same as adding it again with the priority it was taken with and
+     * calling {@link #done(Object)}, so it keeps its lane, or moves up if it was added
+     * with a higher priority meanwhile.
+     *
+     * @param item item returned by {@link #get()} or {@link #getBatch(int)}
+     */
+    public void requeue(T item) {
+        lock.lock();
+        try {
+            Priority takenFrom = processing.get(item);
+            if (takenFrom != null) {
+                add(item, takenFrom);
+            }
+            done(item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of items waiting to be processed
+     */
+    public int len() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of items waiting to be processed in the given lane
+     */
+    public int len(Priority priority) {
+        lock.lock();
+        try {
+            return lanes.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(T item, Priority priority) {
+        lanes.get(priority).add(item);
+        size++;
+        notEmpty.signal();
+    }
+
+    /**
+     * Causes the queue to ignore all new items and makes consumers return
+     * from {@link #get()} once the remaining items are drained.
+     */
+    public void shutDown() {
+        lock.lock();
+        try {
+            shuttingDown = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isShuttingDown() {
+        lock.lock();
+        try {
+            return shuttingDown;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
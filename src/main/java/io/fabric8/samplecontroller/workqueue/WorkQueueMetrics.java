@@ -0,0 +1,36 @@
+package io.fabric8.samplecontroller.workqueue;
+
+/**
+ * Hooks which let a {@link WorkQueue} report what it's doing, similar to client-go's
+ * workqueue MetricsProvider.
+ */
+public interface WorkQueueMetrics {
+    WorkQueueMetrics NOOP = new WorkQueueMetrics() { };
+
+    /**
+     * Called whenever an item is added, including duplicates which get collapsed.
+     */
+    default void added() { }
+
+    /**
+     * Called when an item is handed out to a consumer.
+     *
+     * @param queuedNanos time the item spent waiting in the queue
+     */
+    default void dequeued(long queuedNanos) { }
+
+    /**
+     * Called when an item is handed out to a consumer, reports to {@link #dequeued(long)} unless overridden.
+     *
+     * @param priority lane the item was taken from
+     * @param queuedNanos time the item spent waiting in the queue
+     */
+    default void dequeued(Priority priority, long queuedNanos) {
+        dequeued(queuedNanos);
+    }
+
+    /**
+     * Called when a failed item is requeued through the rate limiter.
+     */
+    default void retried() { }
+}
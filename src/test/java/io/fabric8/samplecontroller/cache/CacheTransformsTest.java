@@ -0,0 +1,123 @@
+package io.fabric8.samplecontroller.cache;
+
+import io.fabric8.kubernetes.api.model.ManagedFieldsEntryBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.samplecontroller.controller.SampleController;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnableKubernetesMockClient(crud = true)
+class CacheTransformsTest {
+    private KubernetesClient client;
+
+    @Test
+    @DisplayName("Should only keep the Deployment fields read by the controller")
+    void testPruneDeployment() {
+        // Given
+        Deployment deployment = getDeployment("example-foo-deploy", "example-foo");
+        deployment.getMetadata().setResourceVersion("42");
+        deployment.getMetadata().setManagedFields(Collections.singletonList(new ManagedFieldsEntryBuilder().withManager("kubectl").build()));
+
+        // When
+        Deployment pruned = CacheTransforms.pruneDeployment(deployment);
+
+        // Then
+        assertEquals("example-foo-deploy", pruned.getMetadata().getName());
+        assertEquals("ns1", pruned.getMetadata().getNamespace());
+        assertEquals("42", pruned.getMetadata().getResourceVersion());
+        assertEquals("uid-example-foo", pruned.getMetadata().getOwnerReferences().get(0).getUid());
+        assertEquals(1, pruned.getMetadata().getAnnotations().size());
+        assertEquals("abc", pruned.getMetadata().getAnnotations().get(SampleController.SPEC_HASH_ANNOTATION));
+        assertEquals(3, pruned.getSpec().getReplicas());
+        assertNull(pruned.getSpec().getTemplate());
+        assertNull(pruned.getStatus());
+        assertTrue(pruned.getMetadata().getManagedFields().isEmpty());
+        assertNotNull(deployment.getSpec().getTemplate());
+        assertEquals(2, deployment.getMetadata().getAnnotations().size());
+    }
+
+    @Test
+    @DisplayName("Should cache pruned Deployments carrying the controller label while handlers see the full object")
+    void testTransformingItemStoreWithLabelSelector() throws ExecutionException, InterruptedException {
+        // Given
+        client.apps().deployments().inNamespace("ns1").resource(getDeployment("example-foo-deploy", "example-foo")).create();
+        Deployment unmanaged = getDeployment("unmanaged-deploy", "example-foo");
+        unmanaged.getMetadata().getLabels().remove(SampleController.CONTROLLER_LABEL);
+        client.apps().deployments().inNamespace("ns1").resource(unmanaged).create();
+        List<Deployment> handled = new CopyOnWriteArrayList<>();
+        CountDownLatch added = new CountDownLatch(1);
+        SharedIndexInformer<Deployment> informer = client.apps().deployments().inNamespace("ns1")
+                .withLabel(SampleController.CONTROLLER_LABEL)
+                .runnableInformer(0);
+        informer.itemStore(new TransformingItemStore<>(CacheTransforms::pruneDeployment));
+        informer.addEventHandler(new ResourceEventHandler<Deployment>() {
+            @Override
+            public void onAdd(Deployment deployment) {
+                handled.add(deployment);
+                added.countDown();
+            }
+
+            @Override
+            public void onUpdate(Deployment oldDeployment, Deployment newDeployment) { }
+
+            @Override
+            public void onDelete(Deployment deployment, boolean deletedFinalStateUnknown) { }
+        });
+
+        // When
+        informer.start().toCompletableFuture().get();
+
+        // Then
+        try {
+            List<Deployment> cached = informer.getIndexer().list();
+            assertEquals(1, cached.size());
+            assertEquals("example-foo-deploy", cached.get(0).getMetadata().getName());
+            assertNull(cached.get(0).getSpec().getTemplate());
+            assertNotNull(cached.get(0).getMetadata().getResourceVersion());
+            // Handlers are notified asynchronously
+            assertTrue(added.await(5, TimeUnit.SECONDS));
+            assertEquals(1, handled.size());
+            assertNotNull(handled.get(0).getSpec().getTemplate());
+        } finally {
+            informer.stop();
+        }
+    }
+
+    private Deployment getDeployment(String name, String fooName) {
+        return new DeploymentBuilder()
+                .withNewMetadata()
+                  .withName(name)
+                  .withNamespace("ns1")
+                  .addToLabels("app", "nginx")
+                  .addToLabels(SampleController.CONTROLLER_LABEL, fooName)
+                  .addToAnnotations(SampleController.SPEC_HASH_ANNOTATION, "abc")
+                  .addToAnnotations("kubectl.kubernetes.io/last-applied-configuration", "{}")
+                  .addNewOwnerReference().withController(true).withKind("Foo").withName(fooName).withUid("uid-" + fooName).endOwnerReference()
+                .endMetadata()
+                .withNewSpec()
+                  .withReplicas(3)
+                  .withNewTemplate()
+                    .withNewSpec().addNewContainer().withName("nginx").withImage("nginx:latest").endContainer().endSpec()
+                  .endTemplate()
+                .endSpec()
+                .withNewStatus().withAvailableReplicas(3).endStatus()
+                .build();
+    }
+}
@@ -0,0 +1,104 @@
+package io.fabric8.samplecontroller.cache;
+
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.api.model.v1alpha1.FooSpec;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+@EnableKubernetesMockClient(crud = true)
+class InformerSnapshotsTest {
+    private KubernetesClient client;
+
+    @TempDir
+    Path snapshotDir;
+
+    @Test
+    @DisplayName("Should pre-populate a restarted informer from the last snapshot and catch up on changes once listed")
+    void testRestoreSnapshot() throws ExecutionException, InterruptedException {
+        // Given
+        client.resources(Foo.class).inNamespace("ns1").resource(getFoo("foo-1", 1)).create();
+        client.resources(Foo.class).inNamespace("ns1").resource(getFoo("foo-2", 2)).create();
+        SharedIndexInformer<Foo> informer = client.resources(Foo.class).inNamespace("ns1").runnableInformer(0);
+        InformerSnapshots snapshots = new InformerSnapshots(snapshotDir, Duration.ofMinutes(10));
+        assertEquals(0, snapshots.restore("foos", informer, Foo.class));
+        informer.start().toCompletableFuture().get();
+        snapshots.close();
+        informer.stop();
+        client.resources(Foo.class).inNamespace("ns1").withName("foo-2").delete();
+
+        // When
+        SharedIndexInformer<Foo> restarted = client.resources(Foo.class).inNamespace("ns1").runnableInformer(0);
+        int restored = new InformerSnapshots(snapshotDir, Duration.ofMinutes(10)).restore("foos", restarted, Foo.class);
+        CompletableFuture<Void> synced = restarted.start().toCompletableFuture();
+
+        // Then
+        try {
+            assertEquals(2, restored);
+            assertTrue(Files.exists(snapshotDir.resolve("foos.snapshot")));
+            synced.get();
+            awaitCondition(() -> restarted.getIndexer().listKeys().size() == 1);
+            assertEquals(1, restarted.getIndexer().getByKey("ns1/foo-1").getSpec().getReplicas());
+        } finally {
+            restarted.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Should ignore snapshots older than the maximum age")
+    void testIgnoreStaleSnapshot() throws IOException, InterruptedException {
+        // Given
+        Path file = snapshotDir.resolve("foos.snapshot");
+        InformerSnapshots.write(file, Arrays.asList(getFoo("foo-1", 1), getFoo("foo-2", 2)));
+        Thread.sleep(20);
+
+        // When
+        List<Foo> recent = InformerSnapshots.read(file, Foo.class, Duration.ofMinutes(10));
+        List<Foo> stale = InformerSnapshots.read(file, Foo.class, Duration.ofMillis(10));
+
+        // Then
+        assertEquals(2, recent.size());
+        assertEquals("foo-2", recent.get(1).getMetadata().getName());
+        assertEquals(2, recent.get(1).getSpec().getReplicas());
+        assertTrue(stale.isEmpty());
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within 10 s");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static Foo getFoo(String name, int replicas) {
+        FooSpec fooSpec = new FooSpec();
+        fooSpec.setDeploymentName(name + "-deploy");
+        fooSpec.setReplicas(replicas);
+        Foo foo = new Foo();
+        foo.setMetadata(new ObjectMetaBuilder().withName(name).withNamespace("ns1").build());
+        foo.setSpec(fooSpec);
+        return foo;
+    }
+}
@@ -0,0 +1,68 @@
+package io.fabric8.samplecontroller.controller;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ControllerExpectationsTest {
+    private final AtomicLong clock = new AtomicLong();
+    private final ControllerExpectations expectations = new ControllerExpectations(1000, clock::get);
+
+    @Test
+    @DisplayName("Should be unsatisfied until the expected create has been observed")
+    void testCreationObserved() {
+        // Given
+        expectations.expectCreations("ns1/foo", 1);
+
+        // When + Then
+        assertFalse(expectations.satisfiedExpectations("ns1/foo"));
+        assertTrue(expectations.satisfiedExpectations("ns1/bar"));
+        expectations.creationObserved("ns1/foo");
+        assertTrue(expectations.satisfiedExpectations("ns1/foo"));
+    }
+
+    @Test
+    @DisplayName("Should not let surplus observed updates satisfy later expectations")
+    void testSurplusObservationsAreNotCarriedOver() {
+        // Given
+        expectations.expectUpdates("ns1/foo", 1);
+        expectations.updateObserved("ns1/foo");
+        expectations.updateObserved("ns1/foo");
+
+        // When
+        expectations.expectUpdates("ns1/foo", 1);
+
+        // Then
+        assertFalse(expectations.satisfiedExpectations("ns1/foo"));
+    }
+
+    @Test
+    @DisplayName("Should consider expectations satisfied once they have expired")
+    void testExpiry() {
+        // Given
+        expectations.expectCreations("ns1/foo", 1);
+
+        // When
+        clock.addAndGet(1001);
+
+        // Then
+        assertTrue(expectations.satisfiedExpectations("ns1/foo"));
+    }
+
+    @Test
+    @DisplayName("Should forget expectations of a deleted Foo")
+    void testDeleteExpectations() {
+        // Given
+        expectations.expectCreations("ns1/foo", 1);
+
+        // When
+        expectations.deleteExpectations("ns1/foo");
+
+        // Then
+        assertTrue(expectations.satisfiedExpectations("ns1/foo"));
+    }
+}
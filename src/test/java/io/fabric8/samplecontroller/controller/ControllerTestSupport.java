@@ -0,0 +1,139 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientBuilder;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.api.model.v1alpha1.FooSpec;
+import io.fabric8.samplecontroller.metrics.ApiRequestMetricsInterceptor;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Shared by the tests which run whole controllers against the CRUD mock server.
+ */
+final class ControllerTestSupport {
+    static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private ControllerTestSupport() {
+    }
+
+    static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        awaitCondition(condition, TIMEOUT_MILLIS);
+    }
+
+    static void awaitCondition(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within " + timeoutMillis + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * @param namespace namespace to look in, null for all namespaces
+     * @return whether the given number of Foos exist, each with the given replicas in its spec, its status and its Deployment
+     */
+    static boolean isConverged(KubernetesClient client, String namespace, int foos, int replicas) {
+        List<Foo> items = (namespace != null ? client.resources(Foo.class).inNamespace(namespace) : client.resources(Foo.class).inAnyNamespace())
+                .list().getItems();
+        if (items.size() != foos) {
+            return false;
+        }
+        for (Foo foo : items) {
+            if (foo.getSpec().getReplicas() != replicas || foo.getStatus() == null || foo.getStatus().getAvailableReplicas() != replicas) {
+                return false;
+            }
+            Deployment deployment = client.apps().deployments().inNamespace(foo.getMetadata().getNamespace())
+                    .withName(foo.getSpec().getDeploymentName()).get();
+            if (deployment == null || deployment.getSpec().getReplicas() != replicas) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static Foo getFoo(String name, int replicas) {
+        FooSpec fooSpec = new FooSpec();
+        fooSpec.setDeploymentName(name + "-deploy");
+        fooSpec.setReplicas(replicas);
+        Foo foo = new Foo();
+        foo.setMetadata(new ObjectMetaBuilder().withName(name).build());
+        foo.setSpec(fooSpec);
+        return foo;
+    }
+
+    /**
+     * One controller with its own informers and worker thread, as run by a replica of the
+     * controller. Configure {@link #controller} before calling {@link #start()}.
+     */
+    static class Replica implements AutoCloseable {
+        final ControllerMetrics metrics = new ControllerMetrics();
+        final SharedIndexInformer<Deployment> deploymentInformer;
+        final SharedIndexInformer<Foo> fooInformer;
+        final SampleController controller;
+        private final KubernetesClient ownClient;
+        private final Thread controllerThread;
+        private final List<Runnable> onClose = new ArrayList<>();
+
+        Replica(KubernetesClient client, String namespace, String identity) {
+            this(client, namespace, identity, 2, false);
+        }
+
+        /**
+         * @param namespace namespace to watch, null for all namespaces
+         * @param countRequests whether to send the controller's requests through a client of
+         *                      its own, which counts them in {@link #metrics}
+         */
+        Replica(KubernetesClient client, String namespace, String identity, int workers, boolean countRequests) {
+            ownClient = countRequests ? new KubernetesClientBuilder()
+                    .withConfig(client.getConfiguration())
+                    .withHttpClientBuilderConsumer(builder -> builder.addOrReplaceInterceptor(ApiRequestMetricsInterceptor.NAME, new ApiRequestMetricsInterceptor(metrics)))
+                    .build() : null;
+            KubernetesClient controllerClient = ownClient != null ? ownClient : client;
+            deploymentInformer = namespace != null ? controllerClient.apps().deployments().inNamespace(namespace).runnableInformer(0)
+                    : controllerClient.apps().deployments().inAnyNamespace().runnableInformer(0);
+            fooInformer = namespace != null ? controllerClient.resources(Foo.class).inNamespace(namespace).runnableInformer(0)
+                    : controllerClient.resources(Foo.class).inAnyNamespace().runnableInformer(0);
+            controller = new SampleController(controllerClient, deploymentInformer, fooInformer, namespace, metrics);
+            controllerThread = new Thread(() -> controller.run(workers, false), "controller-" + identity);
+        }
+
+        /**
+         * @param action run on {@link #close()}, once the controller has stopped
+         */
+        void onClose(Runnable action) {
+            onClose.add(action);
+        }
+
+        void start() {
+            controllerThread.start();
+        }
+
+        @Override
+        public void close() {
+            controller.stop();
+            try {
+                controllerThread.join(TIMEOUT_MILLIS);
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            onClose.forEach(Runnable::run);
+            deploymentInformer.stop();
+            fooInformer.stop();
+            if (ownClient != null) {
+                ownClient.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.PatchContext;
+import io.fabric8.kubernetes.client.dsl.base.PatchType;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.controller.ControllerTestSupport.Replica;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics.ReconcileOutcome;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.awaitCondition;
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.getFoo;
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.isConverged;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@EnableKubernetesMockClient(crud = true)
+class SampleControllerBatchTest {
+    private static final int FOOS = 20;
+    private KubernetesClient client;
+
+    @Test
+    @DisplayName("Should converge a bulk replicas change in batches with one Deployment and one status write per Foo")
+    void testBatchReconcile() throws InterruptedException {
+        // Given
+        try (Replica replica = new Replica(client, null, "batch", 2, true)) {
+            replica.controller.enableBatchReconcile(8);
+            replica.start();
+            for (int i = 0; i < FOOS; i++) {
+                client.resources(Foo.class).inNamespace(getNamespace(i)).resource(getFoo("foo-" + i, 1)).create();
+            }
+            awaitCondition(() -> isConverged(client, null, FOOS, 1));
+            Map<String, Long> requestsBefore = replica.metrics.getApiRequestCounts();
+
+            // When
+            for (int i = 0; i < FOOS; i++) {
+                client.resources(Foo.class).inNamespace(getNamespace(i)).withName("foo-" + i)
+                        .patch(PatchContext.of(PatchType.JSON_MERGE), "{\"spec\":{\"replicas\":3}}");
+            }
+            awaitCondition(() -> isConverged(client, null, FOOS, 3));
+
+            // Then
+            Map<String, Long> requests = replica.metrics.getApiRequestCounts();
+            assertEquals(FOOS, replica.metrics.getReconcileCount(ReconcileOutcome.CREATED));
+            assertEquals(FOOS, replica.metrics.getReconcileCount(ReconcileOutcome.SCALED));
+            assertEquals(FOOS, requests.get("patch deployments") - requestsBefore.getOrDefault("patch deployments", 0L));
+            assertEquals(FOOS, requests.get("patch foos/status") - requestsBefore.get("patch foos/status"));
+            assertEquals(requestsBefore.get("create deployments"), requests.get("create deployments"));
+        }
+    }
+
+    private static String getNamespace(int index) {
+        return index % 2 == 0 ? "ns1" : "ns2";
+    }
+}
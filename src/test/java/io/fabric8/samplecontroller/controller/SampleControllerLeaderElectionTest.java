@@ -0,0 +1,104 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.PatchContext;
+import io.fabric8.kubernetes.client.dsl.base.PatchType;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.controller.ControllerTestSupport.Replica;
+import io.fabric8.samplecontroller.election.HotStandbyElection;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics.ReconcileOutcome;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.awaitCondition;
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.getFoo;
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.isConverged;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@EnableKubernetesMockClient(crud = true)
+class SampleControllerLeaderElectionTest {
+    private static final String NAMESPACE = "ns1";
+    private static final int FOOS = 10;
+    private static final String LEASE_NAME = "sample-leader";
+    /**
+     * Long enough that taking over within half of it can only come from the released lease
+     */
+    private static final Duration LEASE_DURATION = Duration.ofSeconds(14);
+    private KubernetesClient client;
+
+    @Test
+    @DisplayName("Should only reconcile on the leader and fail over to the warm standby once the leader leaves")
+    void testHotStandbyFailover() throws InterruptedException {
+        // Given
+        List<ElectingReplica> replicas = new ArrayList<>();
+        replicas.add(new ElectingReplica("replica-0"));
+        replicas.add(new ElectingReplica("replica-1"));
+        ElectingReplica leader = replicas.get(0);
+        ElectingReplica standby = replicas.get(1);
+        try {
+            leader.start();
+            awaitCondition(leader.controller::isLeading);
+            standby.start();
+            for (int i = 0; i < FOOS; i++) {
+                client.resources(Foo.class).inNamespace(NAMESPACE).resource(getFoo("foo-" + i, 2)).create();
+            }
+            awaitCondition(() -> isConverged(client, NAMESPACE, FOOS, 2));
+            // The standby has seen everything the leader did, without acting on it
+            awaitCondition(() -> standby.deploymentInformer.getStore().list().size() == FOOS);
+            boolean standbyLeadingBeforeFailover = standby.controller.isLeading();
+
+            // When
+            leader.close();
+            // A released lease is picked up within a retry period, no need to wait for it to expire
+            awaitCondition(standby.controller::isLeading, LEASE_DURATION.toMillis() / 2);
+            for (int i = 0; i < FOOS; i++) {
+                client.resources(Foo.class).inNamespace(NAMESPACE).withName("foo-" + i)
+                        .patch(PatchContext.of(PatchType.JSON_MERGE), "{\"spec\":{\"replicas\":3}}");
+            }
+            awaitCondition(() -> isConverged(client, NAMESPACE, FOOS, 3));
+
+            // Then
+            assertFalse(standbyLeadingBeforeFailover);
+            assertEquals(0, getReconcileCount(standby.metrics, ReconcileOutcome.CREATED));
+            assertEquals(FOOS, getReconcileCount(leader.metrics, ReconcileOutcome.CREATED));
+            assertEquals(FOOS, getReconcileCount(standby.metrics, ReconcileOutcome.SCALED));
+            assertFalse(leader.controller.isLeading());
+            assertEquals("replica-1", client.leases().inNamespace(NAMESPACE).withName(LEASE_NAME).get().getSpec().getHolderIdentity());
+        } finally {
+            for (ElectingReplica replica : replicas) {
+                replica.close();
+            }
+        }
+    }
+
+    private static long getReconcileCount(ControllerMetrics metrics, ReconcileOutcome outcome) {
+        return metrics.getReconcileCount(outcome);
+    }
+
+    /**
+     * Replica standing for election, starting out as a standby
+     */
+    private class ElectingReplica extends Replica {
+        private final HotStandbyElection election;
+
+        private ElectingReplica(String identity) {
+            super(client, NAMESPACE, identity);
+            controller.setLeading(false);
+            election = new HotStandbyElection(client, NAMESPACE, LEASE_NAME, identity, LEASE_DURATION, controller::setLeading);
+            onClose(election::close);
+        }
+
+        @Override
+        void start() {
+            super.start();
+            election.start();
+        }
+    }
+}
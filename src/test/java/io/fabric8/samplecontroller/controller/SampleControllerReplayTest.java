@@ -0,0 +1,137 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.PatchContext;
+import io.fabric8.kubernetes.client.dsl.base.PatchType;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesCrudDispatcher;
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
+import io.fabric8.mockwebserver.Context;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.controller.ControllerTestSupport.Replica;
+import io.fabric8.samplecontroller.trace.EventRecorder;
+import io.fabric8.samplecontroller.trace.EventReplayer;
+import io.fabric8.samplecontroller.trace.ReplayReport;
+import io.fabric8.samplecontroller.trace.TraceEvent;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.TIMEOUT_MILLIS;
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.awaitCondition;
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.getFoo;
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.isConverged;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records the informer events of a controller and replays them into a fresh controller
+ * backed by a second CRUD mock server. A trace recorded with EVENT_TRACE_FILE can be replayed
+ * the same way:
+ * <pre>
+ * mvn test -Dtest=SampleControllerReplayTest -Dreplay.trace=/tmp/events.trace -Dreplay.speed=max
+ * </pre>
+ */
+@EnableKubernetesMockClient(crud = true)
+class SampleControllerReplayTest {
+    private static final String NAMESPACE = "ns1";
+    private static final int FOOS = 5;
+    private KubernetesClient client;
+
+    @TempDir
+    Path traceDir;
+
+    @Test
+    @DisplayName("Should converge a fresh controller to the same state when replaying a recorded event trace")
+    void testRecordAndReplay() throws IOException, InterruptedException {
+        // Given
+        Path trace = traceDir.resolve("events.trace");
+        EventRecorder recorder = new EventRecorder(trace, 1000);
+        try (Replica recording = new Replica(client, NAMESPACE, "recording", 2, true)) {
+            recorder.recordFrom(recording.fooInformer, TraceEvent.Resource.FOO);
+            recorder.recordFrom(recording.deploymentInformer, TraceEvent.Resource.DEPLOYMENT);
+            recording.start();
+            for (int i = 0; i < FOOS; i++) {
+                client.resources(Foo.class).inNamespace(NAMESPACE).resource(getFoo("foo-" + i, 1)).create();
+            }
+            awaitCondition(() -> isConverged(client, NAMESPACE, FOOS, 1));
+            for (int i = 0; i < FOOS; i++) {
+                client.resources(Foo.class).inNamespace(NAMESPACE).withName("foo-" + i)
+                        .patch(PatchContext.of(PatchType.JSON_MERGE), "{\"spec\":{\"replicas\":2}}");
+            }
+            client.resources(Foo.class).inNamespace(NAMESPACE).withName("foo-0").delete();
+            awaitCondition(() -> isConverged(client, NAMESPACE, FOOS - 1, 2));
+        } finally {
+            recorder.close();
+        }
+        long recorded = recorder.getRecorded();
+
+        // When
+        ReplayReport report;
+        KubernetesMockServer replayServer = newCrudMockServer();
+        try (KubernetesClient replayClient = replayServer.createClient();
+             Replica replaying = new Replica(replayClient, NAMESPACE, "replaying", 2, true)) {
+            replaying.start();
+            report = new EventReplayer(replayClient, replaying.metrics)
+                    .replay(trace, EventReplayer.AS_FAST_AS_POSSIBLE, Duration.ofMillis(TIMEOUT_MILLIS));
+            awaitCondition(() -> isConverged(replayClient, NAMESPACE, FOOS - 1, 2));
+        } finally {
+            replayServer.destroy();
+        }
+
+        // Then
+        assertTrue(recorded > 0);
+        assertEquals(recorded, report.getEvents());
+        assertEquals(0, report.getFailedEvents());
+        assertTrue(report.isDrained());
+        assertFalse(report.getQueueDepth().isEmpty());
+        assertTrue(report.getReconciles() > 0);
+        assertTrue(report.getWrites().containsKey("patch foos/status"));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "replay.trace", matches = ".+")
+    @DisplayName("Should replay a recorded event trace and report throughput, queue depth and writes")
+    void testReplayTrace() throws IOException, InterruptedException {
+        // Given
+        Path trace = Paths.get(System.getProperty("replay.trace"));
+        String speed = System.getProperty("replay.speed", "1");
+        KubernetesMockServer replayServer = newCrudMockServer();
+        try (KubernetesClient replayClient = replayServer.createClient();
+             Replica replaying = new Replica(replayClient, null, "replaying", Integer.getInteger("replay.workers", 2), true)) {
+            replaying.start();
+            EventReplayer replayer = new EventReplayer(replayClient, replaying.metrics);
+            replayer.setReplayDeployments(Boolean.parseBoolean(System.getProperty("replay.deployments", "true")));
+
+            // When
+            ReplayReport report = replayer.replay(trace, "max".equals(speed) ? EventReplayer.AS_FAST_AS_POSSIBLE : Double.parseDouble(speed),
+                    Duration.ofSeconds(Long.getLong("replay.timeoutSeconds", 600L)));
+
+            // Then
+            System.out.printf("[replay] %s%n", report);
+            System.out.println("[replay] queue depth over time (ms: keys)");
+            for (Map.Entry<Long, Integer> sample : report.getQueueDepth().entrySet()) {
+                System.out.printf("[replay] %8d: %d%n", sample.getKey(), sample.getValue());
+            }
+            assertTrue(report.isDrained());
+        } finally {
+            replayServer.destroy();
+        }
+    }
+
+    private static KubernetesMockServer newCrudMockServer() {
+        KubernetesMockServer server = new KubernetesMockServer(new Context(), new MockWebServer(), new HashMap<>(), new KubernetesCrudDispatcher(), false);
+        server.init();
+        return server;
+    }
+}
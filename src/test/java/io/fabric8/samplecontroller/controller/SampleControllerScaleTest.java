@@ -0,0 +1,427 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientBuilder;
+import io.fabric8.kubernetes.client.dsl.base.PatchContext;
+import io.fabric8.kubernetes.client.dsl.base.PatchType;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import io.fabric8.kubernetes.client.informers.cache.Cache;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.api.model.v1alpha1.FooSpec;
+import io.fabric8.samplecontroller.cache.CacheTransforms;
+import io.fabric8.samplecontroller.cache.InformerSnapshots;
+import io.fabric8.samplecontroller.cache.TransformingItemStore;
+import io.fabric8.samplecontroller.metrics.ApiRequestMetricsInterceptor;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics.ReconcileOutcome;
+import io.fabric8.samplecontroller.workqueue.Priority;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs the real controller with both informers against the CRUD mock server and reports
+ * time to convergence, per-Foo latency, API requests as well as peak and retained heap. Skipped unless
+ * {@code scale.foos} is set:
+ * <pre>
+ * mvn test -Dtest=SampleControllerScaleTest -Dscale.foos=10000 -Dscale.churn=5000
+ * </pre>
+ */
+@EnableKubernetesMockClient(crud = true)
+@EnabledIfSystemProperty(named = "scale.foos", matches = "\\d+")
+class SampleControllerScaleTest {
+    private static final String NAMESPACE = "scale";
+    private static final int MAX_REPLICAS = 5;
+    private KubernetesMockServer server;
+    private KubernetesClient client;
+
+    @TempDir
+    Path snapshotDir;
+
+    @Test
+    @DisplayName("Should converge every Foo, also under replicas churn")
+    void testConvergenceAtScale() throws InterruptedException {
+        // Given
+        int foos = Integer.getInteger("scale.foos");
+        int churn = Integer.getInteger("scale.churn", 0);
+        int resyncNewFoos = Integer.getInteger("scale.resyncNewFoos", 0);
+        Priority resyncPriority = Priority.valueOf(System.getProperty("scale.resyncPriority", Priority.LOW.name()));
+        int workers = Integer.getInteger("scale.workers", 2);
+        boolean pruneCache = Boolean.getBoolean("scale.pruneCache");
+        boolean async = Boolean.getBoolean("scale.async");
+        int batchSize = Integer.getInteger("scale.batchSize", 0);
+        boolean bulk = Boolean.getBoolean("scale.bulk");
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(Long.getLong("scale.timeoutSeconds", 600L));
+        Random random = new Random(Long.getLong("scale.seed", 42L));
+        ControllerMetrics metrics = new ControllerMetrics();
+        // Separate client so that only requests sent by the controller are counted
+        KubernetesClient controllerClient = new KubernetesClientBuilder()
+                .withConfig(client.getConfiguration())
+                .withHttpClientBuilderConsumer(builder -> builder.addOrReplaceInterceptor(ApiRequestMetricsInterceptor.NAME, new ApiRequestMetricsInterceptor(metrics)))
+                .build();
+        SharedInformerFactory informerFactory = controllerClient.informers();
+        SharedIndexInformer<Deployment> deploymentInformer = informerFactory.sharedIndexInformerFor(Deployment.class, 0);
+        SharedIndexInformer<Foo> fooInformer = informerFactory.sharedIndexInformerFor(Foo.class, 0);
+        if (pruneCache) {
+            deploymentInformer.itemStore(new TransformingItemStore<>(CacheTransforms::pruneDeployment));
+            fooInformer.itemStore(new TransformingItemStore<>(CacheTransforms::pruneFoo));
+        }
+        SampleController sampleController = new SampleController(controllerClient, deploymentInformer, fooInformer, NAMESPACE, metrics);
+        if (async) {
+            sampleController.enableAsyncReconcile(Integer.getInteger("scale.maxInFlight", 256));
+        }
+        if (batchSize > 0) {
+            sampleController.enableBatchReconcile(batchSize);
+        }
+        ConvergenceTracker tracker = new ConvergenceTracker();
+        fooInformer.addEventHandler(tracker);
+        Thread controllerThread = new Thread(() -> sampleController.run(workers, false), "scale-test-controller");
+        informerFactory.startAllRegisteredInformers();
+        controllerThread.start();
+        int[] replicas = new int[foos + resyncNewFoos];
+        resetPeakHeap();
+
+        try {
+            // When
+            long createStart = System.nanoTime();
+            for (int i = 0; i < foos; i++) {
+                replicas[i] = 1 + random.nextInt(MAX_REPLICAS);
+                tracker.expect(NAMESPACE + "/" + fooName(i), replicas[i]);
+                client.resources(Foo.class).inNamespace(NAMESPACE).resource(getFoo(fooName(i), replicas[i])).create();
+            }
+            tracker.await(timeoutMillis);
+            report("create", foos, System.nanoTime() - createStart, tracker.drainLatencies(), metrics.getApiRequestCount(), getReconcileCount(metrics));
+            reportCacheSize(deploymentInformer, fooInformer);
+
+            if (churn > 0) {
+                long requestsBefore = metrics.getApiRequestCount();
+                long reconcilesBefore = getReconcileCount(metrics);
+                long churnStart = System.nanoTime();
+                for (int edit = 0; edit < churn; edit++) {
+                    int index = tracker.nextIdle(random.nextInt(foos), foos, timeoutMillis);
+                    int newReplicas = 1 + (replicas[index] + random.nextInt(MAX_REPLICAS - 1)) % MAX_REPLICAS;
+                    replicas[index] = newReplicas;
+                    tracker.expect(NAMESPACE + "/" + fooName(index), newReplicas);
+                    client.resources(Foo.class).inNamespace(NAMESPACE).withName(fooName(index))
+                            .patch(PatchContext.of(PatchType.JSON_MERGE), "{\"spec\":{\"replicas\":" + newReplicas + "}}");
+                }
+                tracker.await(timeoutMillis);
+                report("churn", churn, System.nanoTime() - churnStart, tracker.drainLatencies(), metrics.getApiRequestCount() - requestsBefore,
+                        getReconcileCount(metrics) - reconcilesBefore);
+            }
+
+            if (bulk) {
+                // Every Foo is scaled while the controller is on standby, so that all of them
+                // are waiting in the work queue at once, like after a bulk edit. Only the time
+                // from resuming is measured, not the edits themselves.
+                long requestsBefore = metrics.getApiRequestCount();
+                long reconcilesBefore = getReconcileCount(metrics);
+                sampleController.setLeading(false);
+                for (int i = 0; i < foos; i++) {
+                    replicas[i] = 1 + replicas[i] % MAX_REPLICAS;
+                    tracker.expect(NAMESPACE + "/" + fooName(i), replicas[i]);
+                    client.resources(Foo.class).inNamespace(NAMESPACE).withName(fooName(i))
+                            .patch(PatchContext.of(PatchType.JSON_MERGE), "{\"spec\":{\"replicas\":" + replicas[i] + "}}");
+                }
+                awaitWorkQueueLength(sampleController, foos, timeoutMillis);
+                long bulkStart = System.nanoTime();
+                sampleController.setLeading(true);
+                tracker.await(timeoutMillis);
+                report("bulk", foos, System.nanoTime() - bulkStart, tracker.drainLatencies(), metrics.getApiRequestCount() - requestsBefore,
+                        getReconcileCount(metrics) - reconcilesBefore);
+            }
+
+            if (resyncNewFoos > 0) {
+                // Same spike as an informer resync, every existing Foo is enqueued at once
+                long requestsBefore = metrics.getApiRequestCount();
+                long reconcilesBefore = getReconcileCount(metrics);
+                for (String key : fooInformer.getIndexer().listKeys()) {
+                    sampleController.getWorkQueue().add(key, resyncPriority);
+                }
+                long resyncStart = System.nanoTime();
+                for (int i = foos; i < foos + resyncNewFoos; i++) {
+                    replicas[i] = 1 + random.nextInt(MAX_REPLICAS);
+                    tracker.expect(NAMESPACE + "/" + fooName(i), replicas[i]);
+                    client.resources(Foo.class).inNamespace(NAMESPACE).resource(getFoo(fooName(i), replicas[i])).create();
+                }
+                tracker.await(timeoutMillis);
+                report("resync", resyncNewFoos, System.nanoTime() - resyncStart, tracker.drainLatencies(), metrics.getApiRequestCount() - requestsBefore,
+                        getReconcileCount(metrics) - reconcilesBefore);
+            }
+
+            // Then
+            List<Deployment> deployments = deploymentInformer.getStore().list();
+            assertEquals(foos + resyncNewFoos, deployments.size());
+            for (Deployment deployment : deployments) {
+                int index = Integer.parseInt(deployment.getMetadata().getName().substring("foo-".length(), deployment.getMetadata().getName().length() - "-deploy".length()));
+                assertEquals(replicas[index], deployment.getSpec().getReplicas());
+            }
+            assertTrue(metrics.getApiRequestCount() > 0);
+        } finally {
+            sampleController.stop();
+            controllerThread.join();
+            informerFactory.stopAllRegisteredInformers();
+            controllerClient.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Should reconcile sooner after a restart when the caches are restored from a snapshot")
+    void testTimeToFirstReconcileAfterRestart() throws InterruptedException, IOException {
+        // Given
+        int foos = Integer.getInteger("scale.foos");
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(Long.getLong("scale.timeoutSeconds", 600L));
+        for (int i = 0; i < foos; i++) {
+            client.resources(Foo.class).inNamespace(NAMESPACE).resource(getFoo(fooName(i), 1)).create();
+        }
+
+        // Warms up the JVM and writes the first snapshots
+        restart(false, timeoutMillis);
+
+        // When
+        ControllerMetrics cold = restart(false, timeoutMillis);
+        long snapshotBytes = Files.size(snapshotDir.resolve("foos.snapshot"));
+        ControllerMetrics warm = restart(true, timeoutMillis);
+
+        // Then
+        System.out.printf("[restart] cold: first reconcile after %d ms, caches synced after %d ms%n",
+                toMillis(cold.getFirstReconcileDuration()), toMillis(cold.getInformerSyncDuration()));
+        System.out.printf("[restart] warm: first reconcile after %d ms, caches synced after %d ms, %d Foos restored from a %d KiB snapshot%n",
+                toMillis(warm.getFirstReconcileDuration()), toMillis(warm.getInformerSyncDuration()), foos, snapshotBytes / 1024);
+        assertTrue(warm.getFirstReconcileDuration() > 0);
+    }
+
+    /**
+     * Starts a fresh controller, waits for its first reconcile and for its caches to sync, then
+     * stops it again. Snapshots are written on stop either way.
+     *
+     * @param warmStart whether to restore the caches from the last snapshots
+     */
+    private ControllerMetrics restart(boolean warmStart, long timeoutMillis) throws InterruptedException {
+        ControllerMetrics metrics = new ControllerMetrics();
+        SharedIndexInformer<Deployment> deploymentInformer = client.apps().deployments().inNamespace(NAMESPACE).runnableInformer(0);
+        SharedIndexInformer<Foo> fooInformer = client.resources(Foo.class).inNamespace(NAMESPACE).runnableInformer(0);
+        SampleController sampleController = new SampleController(client, deploymentInformer, fooInformer, NAMESPACE, metrics);
+        // Every snapshot is too old to be restored for a cold start
+        InformerSnapshots snapshots = new InformerSnapshots(snapshotDir, warmStart ? Duration.ofMinutes(10) : Duration.ZERO);
+        snapshots.restore("deployments", deploymentInformer, Deployment.class);
+        sampleController.setWarmStart(snapshots.restore("foos", fooInformer, Foo.class) > 0);
+        Thread controllerThread = new Thread(() -> sampleController.run(2, false), "restart-test-controller");
+        controllerThread.start();
+        try {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (metrics.getFirstReconcileDuration() == 0 || !sampleController.isReady()) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail("Controller did not reconcile and sync within " + timeoutMillis + "ms");
+                }
+                Thread.sleep(1);
+            }
+        } finally {
+            sampleController.stop();
+            controllerThread.join();
+            snapshots.close();
+            deploymentInformer.stop();
+            fooInformer.stop();
+        }
+        return metrics;
+    }
+
+    private static void awaitWorkQueueLength(SampleController sampleController, int length, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (sampleController.getWorkQueue().len() < length) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Work queue didn't reach " + length + " keys within " + timeoutMillis + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static long toMillis(double seconds) {
+        return (long) (seconds * 1000);
+    }
+
+    private static void report(String phase, int items, long elapsedNanos, List<Long> latencies, long apiRequests, long reconciles) {
+        Collections.sort(latencies);
+        System.out.printf("[%s] %d Foo writes converged in %d ms, latency p50=%d ms p99=%d ms max=%d ms, %d reconciles, %d API requests (%.2f per write), peak heap %d MiB, retained heap %d MiB%n",
+                phase, items, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                TimeUnit.NANOSECONDS.toMillis(percentile(latencies, 0.50)),
+                TimeUnit.NANOSECONDS.toMillis(percentile(latencies, 0.99)),
+                TimeUnit.NANOSECONDS.toMillis(percentile(latencies, 1.0)),
+                reconciles, apiRequests, (double) apiRequests / items, getPeakHeap() / (1024 * 1024), getRetainedHeap() / (1024 * 1024));
+    }
+
+    /**
+     * The mock server keeps its objects in the same JVM, so the retained heap doesn't isolate
+     * the informer caches. Their serialized size does, e.g. to compare scale.pruneCache runs.
+     */
+    private static void reportCacheSize(SharedIndexInformer<?>... informers) {
+        long objects = 0;
+        long bytes = 0;
+        for (SharedIndexInformer<?> informer : informers) {
+            for (Object cached : informer.getIndexer().list()) {
+                objects++;
+                bytes += Serialization.asJson(cached).length();
+            }
+        }
+        System.out.printf("[cache] %d cached objects, %d KiB serialized%n", objects, bytes / 1024);
+    }
+
+    private static long getReconcileCount(ControllerMetrics metrics) {
+        long reconciles = 0;
+        for (ReconcileOutcome outcome : ReconcileOutcome.values()) {
+            reconciles += metrics.getReconcileCount(outcome);
+        }
+        return reconciles;
+    }
+
+    private static long percentile(List<Long> sortedValues, double quantile) {
+        if (sortedValues.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sortedValues.size()) - 1;
+        return sortedValues.get(Math.max(0, index));
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long getPeakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * @return heap in use after a full GC, which is dominated by the informer caches
+     */
+    private static long getRetainedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static String fooName(int index) {
+        return "foo-" + index;
+    }
+
+    private static Foo getFoo(String name, int replicas) {
+        Foo foo = new Foo();
+        FooSpec fooSpec = new FooSpec();
+        fooSpec.setReplicas(replicas);
+        fooSpec.setDeploymentName(name + "-deploy");
+        foo.setSpec(fooSpec);
+        foo.setMetadata(new ObjectMetaBuilder().withName(name).withNamespace(NAMESPACE).build());
+        return foo;
+    }
+
+    /**
+     * Records the latency from a write to a Foo until the controller has reported the
+     * expected replicas in its status, as seen by the Foo informer.
+     */
+    private static class ConvergenceTracker implements ResourceEventHandler<Foo> {
+        private final Map<String, long[]> pending = new ConcurrentHashMap<>();
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+
+        void expect(String key, int replicas) {
+            pending.put(key, new long[] {replicas, System.nanoTime()});
+        }
+
+        void await(long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (!pending.isEmpty()) {
+                if (System.currentTimeMillis() > deadline) {
+                    fail(pending.size() + " Foos did not converge within " + timeoutMillis + "ms");
+                }
+                Thread.sleep(10);
+            }
+        }
+
+        /**
+         * Churn edits only go to Foos which have converged, otherwise the status of the
+         * previous write could be mistaken for the convergence of the next one.
+         */
+        int nextIdle(int start, int foos, long timeoutMillis) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (true) {
+                for (int offset = 0; offset < foos; offset++) {
+                    int index = (start + offset) % foos;
+                    if (!pending.containsKey(NAMESPACE + "/" + fooName(index))) {
+                        return index;
+                    }
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    fail("No Foo converged within " + timeoutMillis + "ms");
+                }
+                Thread.sleep(1);
+            }
+        }
+
+        List<Long> drainLatencies() {
+            synchronized (latencies) {
+                List<Long> drained = new ArrayList<>(latencies);
+                latencies.clear();
+                return drained;
+            }
+        }
+
+        @Override
+        public void onAdd(Foo foo) {
+            observe(foo);
+        }
+
+        @Override
+        public void onUpdate(Foo oldFoo, Foo newFoo) {
+            observe(newFoo);
+        }
+
+        @Override
+        public void onDelete(Foo foo, boolean deletedFinalStateUnknown) {
+            pending.remove(Cache.metaNamespaceKeyFunc(foo));
+        }
+
+        private void observe(Foo foo) {
+            String key = Cache.metaNamespaceKeyFunc(foo);
+            long[] expected = pending.get(key);
+            if (expected != null && foo.getStatus() != null && foo.getStatus().getAvailableReplicas() == expected[0]
+                    && pending.remove(key, expected)) {
+                latencies.add(System.nanoTime() - expected[1]);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package io.fabric8.samplecontroller.controller;
+
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.PatchContext;
+import io.fabric8.kubernetes.client.dsl.base.PatchType;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
+import io.fabric8.samplecontroller.controller.ControllerTestSupport.Replica;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics.ReconcileOutcome;
+import io.fabric8.samplecontroller.shard.ShardMembership;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.awaitCondition;
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.getFoo;
+import static io.fabric8.samplecontroller.controller.ControllerTestSupport.isConverged;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnableKubernetesMockClient(crud = true)
+class SampleControllerShardingTest {
+    private static final int FOOS = 30;
+    private KubernetesClient client;
+
+    @Test
+    @DisplayName("Should split Foos across replicas and hand the keys of a leaving replica over to the others")
+    void testShardingAcrossReplicas() throws InterruptedException {
+        // Given
+        List<ShardedReplica> replicas = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            replicas.add(new ShardedReplica("replica-" + i));
+        }
+        try {
+            for (ShardedReplica replica : replicas) {
+                replica.membership.start();
+            }
+            awaitCondition(() -> replicas.stream().allMatch(replica -> replica.membership.getRing().getMembers().size() == 3));
+            for (ShardedReplica replica : replicas) {
+                replica.start();
+            }
+
+            // When
+            for (int i = 0; i < FOOS; i++) {
+                client.resources(Foo.class).inNamespace(getNamespace(i)).resource(getFoo("foo-" + i, 2)).create();
+            }
+            awaitCondition(() -> isConverged(client, null, FOOS, 2));
+            ShardedReplica leaving = replicas.remove(2);
+            leaving.close();
+            awaitCondition(() -> replicas.stream().allMatch(replica -> replica.membership.getRing().getMembers().size() == 2));
+            for (int i = 0; i < FOOS; i++) {
+                client.resources(Foo.class).inNamespace(getNamespace(i)).withName("foo-" + i)
+                        .patch(PatchContext.of(PatchType.JSON_MERGE), "{\"spec\":{\"replicas\":4}}");
+            }
+            awaitCondition(() -> isConverged(client, null, FOOS, 4));
+
+            // Then
+            long created = leaving.metrics.getReconcileCount(ReconcileOutcome.CREATED);
+            for (ShardedReplica replica : replicas) {
+                assertTrue(replica.metrics.getReconcileCount(ReconcileOutcome.CREATED) > 0);
+                assertTrue(replica.metrics.getReconcileCount(ReconcileOutcome.SCALED) > 0);
+                created += replica.metrics.getReconcileCount(ReconcileOutcome.CREATED);
+            }
+            assertTrue(leaving.metrics.getReconcileCount(ReconcileOutcome.CREATED) > 0);
+            // Every Deployment was created by exactly one replica
+            assertEquals(FOOS, created);
+            List<Deployment> deployments = client.apps().deployments().inAnyNamespace().list().getItems();
+            assertEquals(FOOS, deployments.size());
+            for (Deployment deployment : deployments) {
+                assertEquals(4, deployment.getSpec().getReplicas());
+            }
+        } finally {
+            for (ShardedReplica replica : replicas) {
+                replica.close();
+            }
+        }
+    }
+
+    private static String getNamespace(int index) {
+        return index % 2 == 0 ? "ns1" : "ns2";
+    }
+
+    /**
+     * Replica watching all namespaces, handling only the Foos its shard membership assigns to it
+     */
+    private class ShardedReplica extends Replica {
+        private final ShardMembership membership;
+
+        private ShardedReplica(String identity) {
+            super(client, null, identity);
+            membership = new ShardMembership(client, "ns1", "sample", identity, Duration.ofSeconds(1));
+            controller.enableSharding(membership);
+            onClose(membership::close);
+        }
+    }
+}
@@ -1,34 +1,46 @@
 package io.fabric8.samplecontroller.controller;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import io.fabric8.kubernetes.api.model.KubernetesResourceList;
 import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import io.fabric8.kubernetes.api.model.StatusBuilder;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
 import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
 import io.fabric8.kubernetes.client.KubernetesClient;
-import io.fabric8.kubernetes.client.dsl.MixedOperation;
-import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
 import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import io.fabric8.kubernetes.client.informers.impl.cache.CacheImpl;
 import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
 import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
 import io.fabric8.kubernetes.client.utils.Serialization;
 import io.fabric8.samplecontroller.api.model.v1alpha1.Foo;
 import io.fabric8.samplecontroller.api.model.v1alpha1.FooSpec;
+import io.fabric8.samplecontroller.api.model.v1alpha1.FooStatus;
+import io.fabric8.samplecontroller.throttle.AdaptiveRateLimiter;
+import io.fabric8.samplecontroller.workqueue.Priority;
+import io.fabric8.samplecontroller.workqueue.RateLimitingWorkQueue;
 import okhttp3.mockwebserver.RecordedRequest;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
 import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @EnableKubernetesMockClient
 class SampleControllerTest {
     private KubernetesMockServer server;
     private KubernetesClient client;
     private static final long RESYNC_PERIOD_MILLIS = 10 * 60 * 1000L;
+    private SharedIndexInformer<Deployment> deploymentSharedIndexInformer;
 
     @Test
     @DisplayName("Should create deployment for with respect to a specified Foo")
@@ -41,10 +53,9 @@ class SampleControllerTest {
                 .times(testFoo.getSpec().getReplicas());
 
         SharedInformerFactory informerFactory = client.informers();
-        MixedOperation<Foo, KubernetesResourceList<Foo>, Resource<Foo>> fooClient = client.resources(Foo.class);
         SharedIndexInformer<Deployment> deploymentSharedIndexInformer = informerFactory.sharedIndexInformerFor(Deployment.class, RESYNC_PERIOD_MILLIS);
         SharedIndexInformer<Foo> fooSharedIndexInformer = informerFactory.sharedIndexInformerFor(Foo.class, RESYNC_PERIOD_MILLIS);
-        SampleController sampleController = new SampleController(client, fooClient, deploymentSharedIndexInformer, fooSharedIndexInformer, testNamespace);
+        SampleController sampleController = new SampleController(client, deploymentSharedIndexInformer, fooSharedIndexInformer, testNamespace);
 
         // When
         sampleController.reconcile(testFoo);
@@ -62,6 +73,283 @@ class SampleControllerTest {
         assertEquals(testFoo.getMetadata().getName(), deploymentInRequest.getMetadata().getOwnerReferences().get(0).getName());
     }
 
+    @Test
+    @DisplayName("Should read Deployment from informer cache and patch only drifted fields")
+    void testReconcileReadsDeploymentFromInformerCache() throws InterruptedException {
+        // Given
+        String testNamespace = "ns1";
+        Foo testFoo = getFoo("example-foo", testNamespace, "0800cff3-9d80-11ea-8973-0e13a02d8ebd", "example-foo-deploy");
+        Deployment cachedDeployment = getDeployment(testFoo, 1);
+        server.expect().patch().withPath("/apis/apps/v1/namespaces/" + testNamespace + "/deployments/example-foo-deploy")
+                .andReturn(HttpURLConnection.HTTP_OK, cachedDeployment)
+                .once();
+        server.expect().patch().withPath("/apis/samplecontroller.k8s.io/v1alpha1/namespaces/" + testNamespace + "/foos/example-foo/status")
+                .andReturn(HttpURLConnection.HTTP_OK, testFoo)
+                .once();
+        SampleController sampleController = createSampleController(testNamespace);
+        ((CacheImpl<Deployment>) deploymentSharedIndexInformer.getIndexer()).put(cachedDeployment);
+
+        // When
+        sampleController.reconcile(testFoo);
+
+        // Then
+        assertEquals(2, server.getRequestCount());
+        RecordedRequest deploymentPatch = server.takeRequest();
+        assertEquals("PATCH", deploymentPatch.getMethod());
+        assertTrue(deploymentPatch.getHeader("Content-Type").startsWith("application/merge-patch+json"));
+        Deployment deploymentInRequest = Serialization.unmarshal(deploymentPatch.getBody().readUtf8(), Deployment.class);
+        assertEquals(5, deploymentInRequest.getSpec().getReplicas());
+        assertNull(deploymentInRequest.getSpec().getSelector());
+        assertNotNull(deploymentInRequest.getMetadata().getAnnotations().get(SampleController.SPEC_HASH_ANNOTATION));
+        assertEquals(1, cachedDeployment.getSpec().getReplicas());
+        RecordedRequest statusPatch = server.takeRequest();
+        assertEquals("PATCH", statusPatch.getMethod());
+        assertEquals("{\"status\":{\"availableReplicas\":5}}", statusPatch.getBody().readUtf8());
+        assertEquals(1, sampleController.getDeploymentsOwnedBy(testFoo).size());
+    }
+
+    @Test
+    @DisplayName("Should not send any request when Deployment and Foo status are up to date")
+    void testReconcileInSteadyStateDoesNotWrite() throws InterruptedException {
+        // Given
+        String testNamespace = "ns1";
+        Foo testFoo = getFoo("example-foo", testNamespace, "0800cff3-9d80-11ea-8973-0e13a02d8ebd", "example-foo-deploy");
+        server.expect().post().withPath("/apis/apps/v1/namespaces/" + testNamespace + "/deployments")
+                .andReturn(HttpURLConnection.HTTP_CREATED, new DeploymentBuilder().withNewMetadata().withName(testFoo.getSpec().getDeploymentName()).endMetadata().build())
+                .once();
+        createSampleController(testNamespace).reconcile(testFoo);
+        Deployment createdDeployment = Serialization.unmarshal(server.takeRequest().getBody().readUtf8(), Deployment.class);
+        createdDeployment.getMetadata().setResourceVersion("1");
+        // A fresh controller whose cache already contains what the first one created
+        SampleController sampleController = createSampleController(testNamespace);
+        ((CacheImpl<Deployment>) deploymentSharedIndexInformer.getIndexer()).put(createdDeployment);
+        FooStatus fooStatus = new FooStatus();
+        fooStatus.setAvailableReplicas(5);
+        testFoo.setStatus(fooStatus);
+
+        // When
+        sampleController.reconcile(testFoo);
+
+        // Then
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    @DisplayName("Should not create the Deployment again while the informer hasn't observed the first create")
+    void testReconcileWaitsForCreateExpectations() throws InterruptedException {
+        // Given
+        String testNamespace = "ns1";
+        Foo testFoo = getFoo("example-foo", testNamespace, "0800cff3-9d80-11ea-8973-0e13a02d8ebd", "example-foo-deploy");
+        server.expect().post().withPath("/apis/apps/v1/namespaces/" + testNamespace + "/deployments")
+                .andReturn(HttpURLConnection.HTTP_CREATED, new DeploymentBuilder().withNewMetadata().withName(testFoo.getSpec().getDeploymentName()).endMetadata().build())
+                .always();
+        SampleController sampleController = createSampleController(testNamespace);
+
+        // When
+        sampleController.reconcile(testFoo);
+        sampleController.reconcile(testFoo);
+
+        // Then
+        assertEquals(1, server.getRequestCount());
+        assertEquals("POST", server.takeRequest().getMethod());
+    }
+
+    @Test
+    @DisplayName("Should fall back to a live read when the Deployment already exists but isn't cached yet")
+    void testReconcileFallsBackToLiveReadOnConflict() throws InterruptedException {
+        // Given
+        String testNamespace = "ns1";
+        Foo testFoo = getFoo("example-foo", testNamespace, "0800cff3-9d80-11ea-8973-0e13a02d8ebd", "example-foo-deploy");
+        server.expect().post().withPath("/apis/apps/v1/namespaces/" + testNamespace + "/deployments")
+                .andReturn(HttpURLConnection.HTTP_CONFLICT, new StatusBuilder().withCode(HttpURLConnection.HTTP_CONFLICT).withReason("AlreadyExists").build())
+                .once();
+        server.expect().get().withPath("/apis/apps/v1/namespaces/" + testNamespace + "/deployments/example-foo-deploy")
+                .andReturn(HttpURLConnection.HTTP_OK, getDeployment(testFoo, 5))
+                .once();
+        server.expect().patch().withPath("/apis/apps/v1/namespaces/" + testNamespace + "/deployments/example-foo-deploy")
+                .andReturn(HttpURLConnection.HTTP_OK, getDeployment(testFoo, 5))
+                .once();
+        server.expect().patch().withPath("/apis/samplecontroller.k8s.io/v1alpha1/namespaces/" + testNamespace + "/foos/example-foo/status")
+                .andReturn(HttpURLConnection.HTTP_OK, testFoo)
+                .once();
+        SampleController sampleController = createSampleController(testNamespace);
+
+        // When
+        sampleController.reconcile(testFoo);
+
+        // Then
+        assertEquals(4, server.getRequestCount());
+        assertEquals("POST", server.takeRequest().getMethod());
+        assertEquals("GET", server.takeRequest().getMethod());
+        assertEquals("PATCH", server.takeRequest().getMethod());
+        assertEquals("PATCH", server.takeRequest().getMethod());
+    }
+
+    @Test
+    @DisplayName("Should surface failed writes with their status code and not wait for them to be observed")
+    void testReconcileFailedCreate() throws InterruptedException {
+        // Given
+        String testNamespace = "ns1";
+        Foo testFoo = getFoo("example-foo", testNamespace, "0800cff3-9d80-11ea-8973-0e13a02d8ebd", "example-foo-deploy");
+        server.expect().post().withPath("/apis/apps/v1/namespaces/" + testNamespace + "/deployments")
+                .andReturn(HttpURLConnection.HTTP_FORBIDDEN, new StatusBuilder().withCode(HttpURLConnection.HTTP_FORBIDDEN).withMessage("forbidden").build())
+                .times(2);
+        SampleController sampleController = createSampleController(testNamespace);
+
+        // When
+        KubernetesClientException exception = assertThrows(KubernetesClientException.class, () -> sampleController.reconcile(testFoo));
+        KubernetesClientException retried = assertThrows(KubernetesClientException.class, () -> sampleController.reconcile(testFoo));
+
+        // Then
+        assertEquals(HttpURLConnection.HTTP_FORBIDDEN, exception.getCode());
+        assertEquals("forbidden", exception.getStatus().getMessage());
+        assertEquals(HttpURLConnection.HTTP_FORBIDDEN, retried.getCode());
+        assertEquals(2, server.getRequestCount());
+        assertEquals("POST", server.takeRequest().getMethod());
+        assertEquals("POST", server.takeRequest().getMethod());
+    }
+
+    @Test
+    @DisplayName("Should schedule writes over the write rate for later instead of blocking the caller, reads go through")
+    void testWriteThrottle() {
+        // Given
+        Deployment deployment = new DeploymentBuilder().withNewMetadata().withName("example-foo-deploy").withNamespace("ns1").endMetadata().build();
+        server.expect().post().withPath("/apis/apps/v1/namespaces/ns1/deployments")
+                .andReturn(HttpURLConnection.HTTP_CREATED, deployment)
+                .times(2);
+        server.expect().get().withPath("/apis/apps/v1/namespaces/ns1/deployments/example-foo-deploy")
+                .andReturn(HttpURLConnection.HTTP_OK, deployment)
+                .once();
+        AsyncApiClient apiClient = new AsyncApiClient(client);
+        apiClient.setWriteRateLimiter(new AdaptiveRateLimiter(1, 1, 1));
+
+        // When
+        long startNanos = System.nanoTime();
+        CompletableFuture<Deployment> first = apiClient.createDeployment(deployment);
+        CompletableFuture<Deployment> second = apiClient.createDeployment(deployment);
+        long sendNanos = System.nanoTime() - startNanos;
+        Deployment read = apiClient.getDeployment("ns1", "example-foo-deploy").join();
+        boolean secondSentWithRead = second.isDone();
+        first.join();
+        second.join();
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        // Then
+        assertNotNull(read);
+        assertTrue(sendNanos < TimeUnit.MILLISECONDS.toNanos(500));
+        assertFalse(secondSentWithRead);
+        assertTrue(elapsedNanos >= TimeUnit.MILLISECONDS.toNanos(900));
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    @DisplayName("Should drop Foo updates caused by our own status write and Deployment status-only updates")
+    void testDefaultUpdatePredicates() {
+        // Given
+        Foo oldFoo = getFoo("example-foo", "ns1", "0800cff3-9d80-11ea-8973-0e13a02d8ebd", "example-foo-deploy");
+        oldFoo.getMetadata().setGeneration(1L);
+        Foo statusWritten = getFoo("example-foo", "ns1", "0800cff3-9d80-11ea-8973-0e13a02d8ebd", "example-foo-deploy");
+        statusWritten.getMetadata().setGeneration(1L);
+        statusWritten.getMetadata().setResourceVersion("2");
+        FooStatus fooStatus = new FooStatus();
+        fooStatus.setAvailableReplicas(5);
+        statusWritten.setStatus(fooStatus);
+        Foo specChanged = getFoo("example-foo", "ns1", "0800cff3-9d80-11ea-8973-0e13a02d8ebd", "example-foo-deploy");
+        specChanged.getMetadata().setGeneration(2L);
+        specChanged.getMetadata().setResourceVersion("3");
+        specChanged.getSpec().setReplicas(3);
+        specChanged.setStatus(fooStatus);
+        Deployment oldDeployment = getDeployment(oldFoo, 5);
+        oldDeployment.getMetadata().setGeneration(1L);
+        Deployment podBecameReady = new DeploymentBuilder(oldDeployment)
+                .editMetadata().withResourceVersion("2").endMetadata()
+                .withNewStatus().withReadyReplicas(1).endStatus()
+                .build();
+        Deployment scaled = new DeploymentBuilder(oldDeployment)
+                .editMetadata().withResourceVersion("3").withGeneration(2L).endMetadata()
+                .editSpec().withReplicas(1).endSpec()
+                .build();
+
+        // When + Then
+        assertFalse(SampleController.DEFAULT_FOO_UPDATE_PREDICATE.test(oldFoo, statusWritten));
+        assertTrue(SampleController.DEFAULT_FOO_UPDATE_PREDICATE.test(statusWritten, specChanged));
+        assertTrue(SampleController.DEFAULT_FOO_UPDATE_PREDICATE.test(statusWritten, statusWritten));
+        assertFalse(SampleController.DEFAULT_DEPLOYMENT_UPDATE_PREDICATE.test(oldDeployment, podBecameReady));
+        assertTrue(SampleController.DEFAULT_DEPLOYMENT_UPDATE_PREDICATE.test(podBecameReady, scaled));
+    }
+
+    @Test
+    @DisplayName("Should not count a Deployment status-only update as our patch being observed")
+    void testDeploymentStatusUpdateDoesNotSatisfyExpectations() {
+        // Given
+        Foo testFoo = getFoo("example-foo", "ns1", "0800cff3-9d80-11ea-8973-0e13a02d8ebd", "example-foo-deploy");
+        Deployment oldDeployment = getDeployment(testFoo, 1);
+        oldDeployment.getMetadata().setGeneration(1L);
+        Deployment podBecameReady = new DeploymentBuilder(oldDeployment)
+                .editMetadata().withResourceVersion("2").endMetadata()
+                .withNewStatus().withAvailableReplicas(1).endStatus()
+                .build();
+        Deployment patched = new DeploymentBuilder(podBecameReady)
+                .editMetadata().withResourceVersion("3").withGeneration(2L).endMetadata()
+                .editSpec().withReplicas(5).endSpec()
+                .build();
+
+        // When + Then
+        assertFalse(SampleController.DEPLOYMENT_WRITE_OBSERVED.test(oldDeployment, podBecameReady));
+        assertTrue(SampleController.DEPLOYMENT_WRITE_OBSERVED.test(podBecameReady, patched));
+    }
+
+    @Test
+    @DisplayName("Should queue Foos with a changed spec ahead of other updates and resyncs")
+    void testUpdatePriorities() throws InterruptedException {
+        // Given
+        SampleController sampleController = createSampleController("ns1");
+        Foo resynced = getFoo("resynced-foo", "ns1", "uid-resynced-foo", "resynced-foo-deploy");
+        resynced.getMetadata().setResourceVersion("1");
+        Foo oldLabels = getFoo("relabelled-foo", "ns1", "uid-relabelled-foo", "relabelled-foo-deploy");
+        oldLabels.getMetadata().setResourceVersion("1");
+        Foo newLabels = getFoo("relabelled-foo", "ns1", "uid-relabelled-foo", "relabelled-foo-deploy");
+        newLabels.getMetadata().setResourceVersion("2");
+        newLabels.getMetadata().setLabels(Collections.singletonMap("team", "a"));
+        Foo oldSpec = getFoo("scaled-foo", "ns1", "uid-scaled-foo", "scaled-foo-deploy");
+        oldSpec.getMetadata().setResourceVersion("1");
+        Foo newSpec = getFoo("scaled-foo", "ns1", "uid-scaled-foo", "scaled-foo-deploy");
+        newSpec.getMetadata().setResourceVersion("2");
+        newSpec.getSpec().setReplicas(1);
+
+        // When
+        sampleController.enqueueFoo(resynced, SampleController.getUpdatePriority(resynced, resynced));
+        sampleController.enqueueFoo(newLabels, SampleController.getUpdatePriority(oldLabels, newLabels));
+        sampleController.enqueueFoo(newSpec, SampleController.getUpdatePriority(oldSpec, newSpec));
+
+        // Then
+        RateLimitingWorkQueue<String> workqueue = sampleController.getWorkQueue();
+        assertEquals(Priority.LOW, SampleController.getUpdatePriority(resynced, resynced));
+        assertEquals("ns1/scaled-foo", workqueue.get());
+        assertEquals("ns1/relabelled-foo", workqueue.get());
+        assertEquals("ns1/resynced-foo", workqueue.get());
+        workqueue.shutDown();
+    }
+
+    private SampleController createSampleController(String testNamespace) {
+        SharedInformerFactory informerFactory = client.informers();
+        deploymentSharedIndexInformer = informerFactory.sharedIndexInformerFor(Deployment.class, RESYNC_PERIOD_MILLIS);
+        SharedIndexInformer<Foo> fooSharedIndexInformer = informerFactory.sharedIndexInformerFor(Foo.class, RESYNC_PERIOD_MILLIS);
+        return new SampleController(client, deploymentSharedIndexInformer, fooSharedIndexInformer, testNamespace);
+    }
+
+    private Deployment getDeployment(Foo foo, int replicas) {
+        return new DeploymentBuilder()
+                .withNewMetadata()
+                  .withName(foo.getSpec().getDeploymentName())
+                  .withNamespace(foo.getMetadata().getNamespace())
+                  .withResourceVersion("1")
+                  .addNewOwnerReference().withController(true).withKind("Foo").withName(foo.getMetadata().getName()).withUid(foo.getMetadata().getUid()).endOwnerReference()
+                .endMetadata()
+                .withNewSpec().withReplicas(replicas).endSpec()
+                .build();
+    }
+
     private Foo getFoo(String name, String testNamespace, String uid, String deploymentName) {
         Foo foo = new Foo();
         FooSpec fooSpec = new FooSpec();
@@ -0,0 +1,82 @@
+package io.fabric8.samplecontroller.logging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncLogOutputTest {
+
+    @Test
+    @DisplayName("Should write every line in order once closed")
+    void testWritesLines() {
+        // Given
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        AsyncLogOutput output = new AsyncLogOutput(target, 100);
+        PrintStream printStream = new PrintStream(output, false);
+
+        // When
+        printStream.println("first line");
+        printStream.print("second ");
+        printStream.println("line");
+        printStream.print("incomplete");
+        printStream.flush();
+        output.close();
+
+        // Then
+        String lineSeparator = System.lineSeparator();
+        assertEquals("first line" + lineSeparator + "second line" + lineSeparator + "incomplete", new String(target.toByteArray(), StandardCharsets.UTF_8));
+        assertEquals(0, output.getDropped());
+    }
+
+    @Test
+    @DisplayName("Should drop lines instead of blocking while the target is stalled")
+    void testDropsLinesWhenFull() throws InterruptedException {
+        // Given
+        CountDownLatch stalled = new CountDownLatch(1);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        OutputStream stalledTarget = new OutputStream() {
+            @Override
+            public void write(int b) {
+                awaitUninterruptibly(stalled);
+                written.write(b);
+            }
+        };
+        AsyncLogOutput output = new AsyncLogOutput(stalledTarget, 10);
+        PrintStream printStream = new PrintStream(output, false);
+
+        // When
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            printStream.println("line " + i);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        stalled.countDown();
+        output.close();
+
+        // Then
+        assertTrue(elapsedMillis < 1000, "Logging took " + elapsedMillis + " ms");
+        String log = new String(written.toByteArray(), StandardCharsets.UTF_8);
+        long writtenLines = log.split("line ", -1).length - 1;
+        assertTrue(output.getDropped() > 0);
+        assertEquals(1000, writtenLines + output.getDropped());
+        assertTrue(log.startsWith("line 0"));
+        assertTrue(log.contains(output.getDropped() + " log lines dropped"));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException interruptedException) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.fabric8.samplecontroller.logging;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SampledLoggerTest {
+
+    @Test
+    @DisplayName("Should log the first message of every interval and count the others")
+    void testSample() {
+        // Given
+        AtomicLong nanos = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+        SampledLogger sampledLogger = new SampledLogger(LoggerFactory.getLogger(SampledLoggerTest.class.getSimpleName()),
+                Duration.ofSeconds(10), nanos::get);
+
+        // When
+        boolean first = sampledLogger.sample();
+        boolean second = sampledLogger.sample();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        boolean beforeInterval = sampledLogger.sample();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        boolean afterInterval = sampledLogger.sample();
+        boolean afterIntervalAgain = sampledLogger.sample();
+
+        // Then
+        assertTrue(first);
+        assertFalse(second);
+        assertFalse(beforeInterval);
+        assertTrue(afterInterval);
+        assertFalse(afterIntervalAgain);
+        assertEquals(3, sampledLogger.getSuppressed());
+    }
+
+    @Test
+    @DisplayName("Should reset the suppressed count once a message is logged")
+    void testInfoResetsSuppressed() {
+        // Given
+        AtomicLong nanos = new AtomicLong();
+        SampledLogger sampledLogger = new SampledLogger(LoggerFactory.getLogger(SampledLoggerTest.class.getSimpleName()),
+                Duration.ofSeconds(10), nanos::get);
+        for (int i = 0; i < 5; i++) {
+            sampledLogger.info("Enqueued Foo {}", "ns1/foo-" + i);
+        }
+
+        // When
+        long suppressedBefore = sampledLogger.getSuppressed();
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        sampledLogger.info("Enqueued Foo {} with priority {}", "ns1/foo-5", "high");
+
+        // Then
+        assertEquals(4, suppressedBefore);
+        assertEquals(0, sampledLogger.getSuppressed());
+    }
+}
@@ -0,0 +1,68 @@
+package io.fabric8.samplecontroller.metrics;
+
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientBuilder;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.samplecontroller.metrics.ControllerMetrics.ReconcileOutcome;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnableKubernetesMockClient(crud = true)
+class ControllerMetricsTest {
+    private KubernetesClient client;
+
+    @Test
+    @DisplayName("Should render counters, gauges and histograms in Prometheus text format")
+    void testRender() {
+        // Given
+        ControllerMetrics metrics = new ControllerMetrics();
+        metrics.setWorkQueueDepthFunction(() -> 3);
+        metrics.added();
+        metrics.added();
+        metrics.dequeued(2_000_000L);
+        metrics.reconciled(ReconcileOutcome.NO_OP, System.nanoTime());
+
+        // When
+        String output = metrics.getRegistry().render();
+
+        // Then
+        assertTrue(output.contains("# TYPE samplecontroller_workqueue_depth gauge\nsamplecontroller_workqueue_depth 3\n"));
+        assertTrue(output.contains("samplecontroller_workqueue_adds_total 2\n"));
+        assertTrue(output.contains("samplecontroller_workqueue_queue_duration_seconds_bucket{le=\"0.001\"} 0\n"));
+        assertTrue(output.contains("samplecontroller_workqueue_queue_duration_seconds_bucket{le=\"0.005\"} 1\n"));
+        assertTrue(output.contains("samplecontroller_workqueue_queue_duration_seconds_bucket{le=\"+Inf\"} 1\n"));
+        assertTrue(output.contains("samplecontroller_workqueue_queue_duration_seconds_count 1\n"));
+        assertTrue(output.contains("samplecontroller_reconcile_duration_seconds_count{outcome=\"no-op\"} 1\n"));
+        assertTrue(output.contains("samplecontroller_reconcile_duration_seconds_count{outcome=\"created\"} 0\n"));
+    }
+
+    @Test
+    @DisplayName("Should count API requests by verb, resource and status code")
+    void testApiRequestMetricsInterceptor() {
+        // Given
+        ControllerMetrics metrics = new ControllerMetrics();
+        try (KubernetesClient instrumentedClient = new KubernetesClientBuilder()
+                .withConfig(client.getConfiguration())
+                .withHttpClientBuilderConsumer(builder -> builder.addOrReplaceInterceptor(ApiRequestMetricsInterceptor.NAME, new ApiRequestMetricsInterceptor(metrics)))
+                .build()) {
+
+            // When
+            instrumentedClient.apps().deployments().inNamespace("ns1")
+                    .resource(new DeploymentBuilder().withNewMetadata().withName("example-foo-deploy").endMetadata().build())
+                    .create();
+            instrumentedClient.apps().deployments().inNamespace("ns1").withName("example-foo-deploy").get();
+            instrumentedClient.apps().deployments().inNamespace("ns1").withName("does-not-exist").get();
+            instrumentedClient.apps().deployments().inNamespace("ns1").list();
+        }
+
+        // Then
+        String output = metrics.getRegistry().render();
+        assertTrue(output.contains("samplecontroller_api_requests_total{verb=\"create\",resource=\"deployments\",code=\"201\"} 1\n"));
+        assertTrue(output.contains("samplecontroller_api_requests_total{verb=\"get\",resource=\"deployments\",code=\"200\"} 1\n"));
+        assertTrue(output.contains("samplecontroller_api_requests_total{verb=\"get\",resource=\"deployments\",code=\"404\"} 1\n"));
+        assertTrue(output.contains("samplecontroller_api_requests_total{verb=\"list\",resource=\"deployments\",code=\"200\"} 1\n"));
+    }
+}
@@ -0,0 +1,64 @@
+package io.fabric8.samplecontroller.predicate;
+
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UpdatePredicateTest {
+
+    @Test
+    @DisplayName("Should only match generation changes, treating a missing generation as changed")
+    void testGenerationChanged() {
+        // Given
+        UpdatePredicate<Deployment> predicate = UpdatePredicate.generationChanged();
+        Deployment deployment = getDeployment("1", 1L);
+
+        // When + Then
+        assertFalse(predicate.test(deployment, getDeployment("2", 1L)));
+        assertTrue(predicate.test(deployment, getDeployment("2", 2L)));
+        assertTrue(predicate.test(deployment, getDeployment("2", null)));
+    }
+
+    @Test
+    @DisplayName("Should treat missing labels like empty labels")
+    void testLabelsChanged() {
+        // Given
+        UpdatePredicate<Deployment> predicate = UpdatePredicate.labelsChanged();
+        Deployment withoutLabels = getDeployment("1", 1L);
+        withoutLabels.getMetadata().setLabels(null);
+        Deployment withLabel = new DeploymentBuilder(getDeployment("2", 1L)).editMetadata().addToLabels("app", "nginx").endMetadata().build();
+
+        // When + Then
+        assertFalse(predicate.test(withoutLabels, getDeployment("2", 1L)));
+        assertTrue(predicate.test(withoutLabels, withLabel));
+    }
+
+    @Test
+    @DisplayName("Should combine predicates into a pipeline")
+    void testComposition() {
+        // Given
+        UpdatePredicate<Deployment> statusOnly = UpdatePredicate.<Deployment>generationChanged()
+                .or(UpdatePredicate.fieldChanged(deployment -> deployment.getStatus() != null ? deployment.getStatus().getReadyReplicas() : null))
+                .negate();
+        UpdatePredicate<Deployment> notResync = UpdatePredicate.<Deployment>resync().negate();
+        Deployment deployment = getDeployment("1", 1L);
+        Deployment conditionsChanged = new DeploymentBuilder(getDeployment("2", 1L)).withNewStatus().addNewCondition().withType("Progressing").endCondition().endStatus().build();
+        Deployment readyReplicasChanged = new DeploymentBuilder(getDeployment("3", 1L)).withNewStatus().withReadyReplicas(1).endStatus().build();
+
+        // When + Then
+        assertTrue(statusOnly.and(notResync).test(deployment, conditionsChanged));
+        assertFalse(statusOnly.and(notResync).test(deployment, readyReplicasChanged));
+        assertFalse(statusOnly.and(notResync).test(deployment, getDeployment("1", 1L)));
+    }
+
+    private Deployment getDeployment(String resourceVersion, Long generation) {
+        return new DeploymentBuilder()
+                .withNewMetadata().withName("example-foo-deploy").withResourceVersion(resourceVersion).withGeneration(generation).endMetadata()
+                .withNewSpec().withReplicas(1).endSpec()
+                .build();
+    }
+}
@@ -0,0 +1,58 @@
+package io.fabric8.samplecontroller.shard;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardRingTest {
+    private static final int KEYS = 10000;
+
+    @Test
+    @DisplayName("Should spread keys evenly across members")
+    void testOwnerDistribution() {
+        // Given
+        ShardRing ring = new ShardRing(Arrays.asList("replica-a", "replica-b", "replica-c"));
+
+        // When
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.owner("ns1/foo-" + i), 1, Integer::sum);
+        }
+
+        // Then
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(Math.abs(count - KEYS / 3) < KEYS / 3 * 0.2, "unbalanced: " + counts);
+        }
+        assertNull(new ShardRing(Collections.<String>emptyList()).owner("ns1/foo-1"));
+    }
+
+    @Test
+    @DisplayName("Should only move keys to a joining member")
+    void testJoinMovesMinimalKeys() {
+        // Given
+        ShardRing before = new ShardRing(Arrays.asList("replica-a", "replica-b", "replica-c"));
+        ShardRing after = new ShardRing(Arrays.asList("replica-a", "replica-b", "replica-c", "replica-d"));
+
+        // When
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String key = "ns1/foo-" + i;
+            if (!before.owner(key).equals(after.owner(key))) {
+                assertEquals("replica-d", after.owner(key));
+                moved++;
+            }
+        }
+
+        // Then
+        assertTrue(Math.abs(moved - KEYS / 4) < KEYS / 4 * 0.2, "moved " + moved);
+    }
+}
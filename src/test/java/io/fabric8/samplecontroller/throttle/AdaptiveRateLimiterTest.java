@@ -0,0 +1,126 @@
+package io.fabric8.samplecontroller.throttle;
+
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientBuilder;
+import io.fabric8.kubernetes.client.http.HttpClient;
+import io.fabric8.kubernetes.client.server.mock.EnableKubernetesMockClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import io.fabric8.kubernetes.client.utils.URLUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@EnableKubernetesMockClient
+class AdaptiveRateLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private KubernetesMockServer server;
+    private KubernetesClient client;
+
+    @Test
+    @DisplayName("Should hand out the burst right away and then tokens at the current rate")
+    void testTokenBucket() {
+        // Given
+        AtomicLong clock = new AtomicLong();
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(1, 10, 2, 1, 0.5, clock::get);
+
+        // When
+        long first = rateLimiter.reserve();
+        long second = rateLimiter.reserve();
+        long third = rateLimiter.reserve();
+        clock.addAndGet(SECOND);
+        long afterRefill = rateLimiter.reserve();
+
+        // Then
+        assertEquals(0, first);
+        assertEquals(0, second);
+        assertEquals(SECOND / 10, third);
+        assertEquals(0, afterRefill);
+    }
+
+    @Test
+    @DisplayName("Should halve the rate at most once per second when throttled, pause for Retry-After and recover additively")
+    void testAimd() {
+        // Given
+        AtomicLong clock = new AtomicLong();
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(1, 10, 5, 1, 0.5, clock::get);
+
+        // When
+        rateLimiter.onThrottled(2000);
+        rateLimiter.onThrottled(0);
+        double throttledRate = rateLimiter.getRate();
+        long pausedWait = rateLimiter.reserve();
+        clock.addAndGet(3 * SECOND);
+        rateLimiter.onThrottled(0);
+        rateLimiter.onThrottled(0);
+        rateLimiter.onThrottled(0);
+        double minRate = rateLimiter.getRate();
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.onSuccess();
+        }
+
+        // Then
+        assertEquals(5, throttledRate, 0.001);
+        assertEquals(2 * SECOND + SECOND / 5, pausedWait);
+        assertEquals(2.5, minRate, 0.001);
+        assertEquals(10, rateLimiter.getRate(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Should lower the write rate only for throttled writes which took a token, not for other requests")
+    void testWriteThrottleInterceptor() {
+        // Given
+        Deployment deployment = new DeploymentBuilder().withNewMetadata().withName("example-foo-deploy").withNamespace("ns1").endMetadata().build();
+        server.expect().post().withPath("/apis/apps/v1/namespaces/ns1/deployments")
+                .andReturn(429, new StatusBuilder().withCode(429).withReason("TooManyRequests").build())
+                .withHeader("Retry-After", "0")
+                .once();
+        server.expect().post().withPath("/apis/apps/v1/namespaces/ns1/deployments")
+                .andReturn(HttpURLConnection.HTTP_CREATED, deployment)
+                .once();
+        server.expect().put().withPath("/apis/coordination.k8s.io/v1/namespaces/ns1/leases/sample-leader")
+                .andReturn(429, new StatusBuilder().withCode(429).withReason("TooManyRequests").build())
+                .withHeader("Retry-After", "0")
+                .always();
+        AdaptiveRateLimiter rateLimiter = new AdaptiveRateLimiter(1, 100, 10);
+        AtomicInteger throttled = new AtomicInteger();
+
+        // When
+        try (KubernetesClient throttledClient = new KubernetesClientBuilder()
+                .withConfig(new ConfigBuilder(client.getConfiguration()).withRequestRetryBackoffLimit(0).build())
+                .withHttpClientBuilderConsumer(builder -> builder.addOrReplaceInterceptor(WriteThrottleInterceptor.NAME,
+                        new WriteThrottleInterceptor(rateLimiter, throttled::incrementAndGet)))
+                .build()) {
+            HttpClient httpClient = throttledClient.getHttpClient();
+            String deploymentsUrl = URLUtils.join(client.getMasterUrl().toString(), "apis/apps/v1/namespaces/ns1/deployments");
+            for (int i = 0; i < 2; i++) {
+                httpClient.sendAsync(httpClient.newHttpRequestBuilder()
+                        .uri(deploymentsUrl)
+                        .header(WriteThrottleInterceptor.RESERVED_HEADER, "true")
+                        .post("application/json", Serialization.asJson(deployment))
+                        .build(), String.class).join();
+            }
+            httpClient.sendAsync(httpClient.newHttpRequestBuilder()
+                    .uri(URLUtils.join(client.getMasterUrl().toString(), "apis/coordination.k8s.io/v1/namespaces/ns1/leases/sample-leader"))
+                    .put("application/json", "{}")
+                    .build(), String.class).join();
+        }
+
+        // Then
+        assertEquals(1, throttled.get());
+        assertEquals(3, server.getRequestCount());
+        // Halved by the 429, raised by the second create going through, the Lease write doesn't count
+        assertEquals(50 + 1 / 50.0, rateLimiter.getRate(), 0.001);
+    }
+}
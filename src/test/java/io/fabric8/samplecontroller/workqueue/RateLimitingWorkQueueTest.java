@@ -0,0 +1,256 @@
+package io.fabric8.samplecontroller.workqueue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class RateLimitingWorkQueueTest {
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private final RateLimitingWorkQueue<String> workqueue = new RateLimitingWorkQueue<>(RateLimitingWorkQueue.defaultControllerRateLimiter());
+
+    @AfterEach
+    void tearDown() {
+        workqueue.shutDown();
+    }
+
+    @Test
+    @DisplayName("Should collapse duplicate keys which are waiting to be processed")
+    void testAddDeduplicatesQueuedKeys() throws InterruptedException {
+        // Given
+        workqueue.add("ns1/foo");
+        workqueue.add("ns1/foo");
+        workqueue.add("ns1/bar");
+
+        // When
+        String first = workqueue.get();
+
+        // Then
+        assertEquals("ns1/foo", first);
+        assertEquals(1, workqueue.len());
+    }
+
+    @Test
+    @DisplayName("Should requeue a key added while being processed only after it's done")
+    void testAddWhileProcessingRequeuesOnDone() throws InterruptedException {
+        // Given
+        workqueue.add("ns1/foo");
+        String key = workqueue.get();
+
+        // When
+        workqueue.add("ns1/foo");
+        workqueue.add("ns1/foo");
+
+        // Then
+        assertEquals(0, workqueue.len());
+        workqueue.done(key);
+        assertEquals(1, workqueue.len());
+    }
+
+    @Test
+    @DisplayName("Should hand out keys of higher priority lanes first and move queued keys up")
+    void testPriorityLanes() throws InterruptedException {
+        // Given
+        workqueue.add("ns1/resync-1", Priority.LOW);
+        workqueue.add("ns1/resync-2", Priority.LOW);
+        workqueue.add("ns1/retry");
+        workqueue.add("ns1/new", Priority.HIGH);
+
+        // When
+        workqueue.add("ns1/resync-2", Priority.HIGH);
+        workqueue.add("ns1/new", Priority.LOW);
+
+        // Then
+        assertEquals(4, workqueue.len());
+        assertEquals(2, workqueue.len(Priority.HIGH));
+        assertEquals("ns1/new", workqueue.get());
+        assertEquals("ns1/resync-2", workqueue.get());
+        assertEquals("ns1/retry", workqueue.get());
+        assertEquals("ns1/resync-1", workqueue.get());
+        assertEquals(0, workqueue.len());
+    }
+
+    @Test
+    @DisplayName("Should requeue a key added while being processed in the highest lane it was added to")
+    void testPriorityOfKeyAddedWhileProcessing() throws InterruptedException {
+        // Given
+        workqueue.add("ns1/foo", Priority.LOW);
+        workqueue.add("ns1/bar", Priority.NORMAL);
+        String key = workqueue.get();
+
+        // When
+        workqueue.add("ns1/bar", Priority.LOW);
+        workqueue.add("ns1/bar", Priority.HIGH);
+        workqueue.done(key);
+
+        // Then
+        assertEquals("ns1/bar", key);
+        assertEquals(1, workqueue.len(Priority.HIGH));
+        assertEquals("ns1/bar", workqueue.get());
+        assertEquals("ns1/foo", workqueue.get());
+    }
+
+    @Test
+    @DisplayName("Should put a key handed back without processing into the lane it was taken from")
+    void testRequeue() throws InterruptedException {
+        // Given
+        workqueue.add("ns1/new", Priority.HIGH);
+        workqueue.add("ns1/resync", Priority.LOW);
+        String high = workqueue.get();
+        String low = workqueue.get();
+        workqueue.add("ns1/retry");
+
+        // When
+        workqueue.requeue(high);
+        workqueue.requeue(low);
+
+        // Then
+        assertEquals(1, workqueue.len(Priority.HIGH));
+        assertEquals(1, workqueue.len(Priority.LOW));
+        assertEquals("ns1/new", workqueue.get());
+        assertEquals("ns1/retry", workqueue.get());
+        assertEquals("ns1/resync", workqueue.get());
+    }
+
+    @Test
+    @DisplayName("Should take a batch of keys in priority order without waiting for the batch to fill up")
+    void testGetBatch() throws InterruptedException {
+        // Given
+        workqueue.add("ns1/resync", Priority.LOW);
+        workqueue.add("ns1/retry");
+        workqueue.add("ns2/new", Priority.HIGH);
+        workqueue.add("ns1/new", Priority.HIGH);
+
+        // When
+        List<String> first = workqueue.getBatch(3);
+        List<String> second = workqueue.getBatch(3);
+        workqueue.add("ns2/new");
+
+        // Then
+        assertEquals(Arrays.asList("ns2/new", "ns1/new", "ns1/retry"), first);
+        assertEquals(Collections.singletonList("ns1/resync"), second);
+        // Still being processed, requeued once done
+        assertEquals(0, workqueue.len());
+        workqueue.done("ns2/new");
+        assertEquals(1, workqueue.len());
+    }
+
+    @Test
+    @DisplayName("Should return null from get once shut down and drained")
+    void testShutDown() throws InterruptedException {
+        // Given
+        workqueue.add("ns1/foo");
+
+        // When
+        workqueue.shutDown();
+        workqueue.add("ns1/bar");
+
+        // Then
+        assertEquals("ns1/foo", workqueue.get());
+        assertNull(workqueue.get());
+    }
+
+    @Test
+    @DisplayName("Should drop a delayed key when the queue shuts down while it's being scheduled")
+    void testAddAfterRacingShutDown() {
+        // Given
+        DelayingWorkQueue<String> racingQueue = new DelayingWorkQueue<String>() {
+            @Override
+            public boolean isShuttingDown() {
+                // Pretend the shut down happened right after addAfter checked
+                return false;
+            }
+        };
+        racingQueue.shutDown();
+
+        // When
+        racingQueue.addAfter("ns1/foo", 100);
+
+        // Then
+        assertEquals(0, racingQueue.len());
+    }
+
+    @Test
+    @DisplayName("Should back off exponentially per key up to the configured cap")
+    void testItemExponentialFailureRateLimiter() {
+        // Given
+        ItemExponentialFailureRateLimiter<String> rateLimiter = new ItemExponentialFailureRateLimiter<>(5, 30);
+
+        // When + Then
+        assertEquals(5, rateLimiter.when("ns1/foo"));
+        assertEquals(10, rateLimiter.when("ns1/foo"));
+        assertEquals(20, rateLimiter.when("ns1/foo"));
+        assertEquals(30, rateLimiter.when("ns1/foo"));
+        assertEquals(5, rateLimiter.when("ns1/bar"));
+        assertEquals(4, rateLimiter.numRequeues("ns1/foo"));
+        rateLimiter.forget("ns1/foo");
+        assertEquals(5, rateLimiter.when("ns1/foo"));
+    }
+
+    @Test
+    @DisplayName("Should hand out burst tokens immediately and then delay at the configured rate")
+    void testBucketRateLimiter() {
+        // Given
+        AtomicLong clock = new AtomicLong();
+        BucketRateLimiter<String> rateLimiter = new BucketRateLimiter<>(10, 2, clock::get);
+
+        // When + Then
+        assertEquals(0, rateLimiter.when("ns1/foo"));
+        assertEquals(0, rateLimiter.when("ns1/foo"));
+        assertEquals(100, rateLimiter.when("ns1/foo"));
+        assertEquals(200, rateLimiter.when("ns1/foo"));
+        clock.addAndGet(1000_000_000L);
+        assertEquals(0, rateLimiter.when("ns1/foo"));
+    }
+
+    @Test
+    @DisplayName("Should add a key scheduled more than once at the earliest time with the highest priority")
+    void testAddAfterMergesSchedules() throws InterruptedException {
+        // Given
+        workqueue.addAfter("ns1/foo", 50, Priority.LOW);
+        // Far beyond the deadline below, the key can only show up in time through the earlier schedule
+        workqueue.addAfter("ns1/foo", TimeUnit.MINUTES.toMillis(10), Priority.HIGH);
+
+        // When
+        awaitCondition(() -> workqueue.len() > 0);
+
+        // Then
+        assertEquals(1, workqueue.len());
+        assertEquals(1, workqueue.len(Priority.HIGH));
+        assertEquals("ns1/foo", workqueue.get());
+    }
+
+    @Test
+    @DisplayName("Should add a rate limited key after its backoff has passed")
+    void testAddRateLimited() throws InterruptedException {
+        // Given
+        workqueue.addRateLimited("ns1/foo");
+
+        // When
+        String key = workqueue.get();
+
+        // Then
+        assertEquals("ns1/foo", key);
+        assertEquals(1, workqueue.numRequeues("ns1/foo"));
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition not met within " + TIMEOUT_MILLIS + " ms");
+            }
+            Thread.sleep(10);
+        }
+    }
+}